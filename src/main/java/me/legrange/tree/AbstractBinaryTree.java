@@ -1,18 +1,29 @@
 package me.legrange.tree;
 
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 import java.util.stream.Stream;
 
+import static java.lang.String.format;
+
 abstract class AbstractBinaryTree<T> implements Tree<T> {
 
     protected final BinaryNode<T> root;
+    final Equivalence<? super T> equivalence;
+    final ChangePublisher<T> publisher = new ChangePublisher<>();
+    private final TreeStructure<BinaryNode<T>, T> structure = new Structure();
 
     /**
      * Create a new binary ree with the given data at the root.
@@ -20,30 +31,51 @@ abstract class AbstractBinaryTree<T> implements Tree<T> {
      * @param rootData The data for the root
      */
     protected AbstractBinaryTree(T rootData) {
+        this(rootData, Equivalence.equality());
+    }
+
+    /**
+     * Create a new binary tree with the given data at the root, in which data is compared with the given
+     * equivalence.
+     *
+     * @param rootData    The data for the root
+     * @param equivalence The equivalence that decides when data is the same
+     */
+    protected AbstractBinaryTree(T rootData, Equivalence<? super T> equivalence) {
         this.root = new BinaryNode<>(null, rootData);
+        this.equivalence = equivalence;
     }
 
     @Override
     public final boolean contains(T object) {
-        return preOrderDepthStream().anyMatch(val -> val.equals(object));
+        return preOrderDepthStream().anyMatch(val -> equivalence.equivalent(val, object));
     }
 
     public final Stream<T> inOrderDepthStream() {
-        return makeInOrderDepthStream(root).map(node -> node.getData());
+        return TreeIterators.stream(new InOrderIterator()).map(node -> node.getData());
     }
 
     public final Stream<T> preOrderDepthStream() {
-        return makePreOrderDepthStream(root).map(node -> node.getData());
+        return TreeIterators.preOrderNodes(structure).map(node -> node.getData());
     }
 
     public final Stream<T> postOrderDepthStream() {
-        return makePostOrderDepthStream(root)
-                .map(node -> node.getData());
+        return TreeIterators.postOrderNodes(structure).map(node -> node.getData());
     }
 
     @Override
     public final Stream<T> breadthStream() {
-        return makeBreadthStream(Collections.singletonList(getRoot()));
+        return breadthStream(Integer.MAX_VALUE);
+    }
+
+    @Override
+    public final Stream<T> preOrderDepthStream(int maxDepth) {
+        return TreeIterators.preOrder(structure, maxDepth).map(Leveled::getData);
+    }
+
+    @Override
+    public final Stream<Leveled<T>> leveledBreadthStream(int maxDepth) {
+        return TreeIterators.breadth(structure, maxDepth);
     }
 
     @Override
@@ -53,76 +85,123 @@ abstract class AbstractBinaryTree<T> implements Tree<T> {
 
     @Override
     public final Optional<T> getParent(T child) {
-        return makePreOrderDepthStream(root)
-                .filter(node -> node.getData().equals(child)).findFirst()
+        return TreeIterators.preOrderNodes(structure)
+                .filter(node -> equivalence.equivalent(node.getData(), child)).findFirst()
                 .map(node -> node.getParentNode())
                 .map(node -> node.getData());
     }
 
     @Override
     public final int getDepth() {
-        return calculateDepth(root);
+        return TreeIterators.depth(structure);
     }
 
     @Override
     public final int getWidth() {
-        return calculateWidth(root);
+        return TreeIterators.width(structure);
+    }
+
+    @Override
+    public final void walk(TreeVisitor<? super T> visitor) {
+        TreeWalker.walk(structure, visitor);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The child results for a node are ordered left to right, and only include the children that are present.
+     */
+    @Override
+    public final <R> R fold(Function<? super T, ? extends R> leafFunction, BiFunction<? super T, List<R>, ? extends R> combineFunction) {
+        return ForkJoinPool.commonPool().invoke(new FoldTask<>(structure, leafFunction, combineFunction, null, root));
+    }
+
+    @Override
+    public final <R> Map<T, R> aggregate(Function<? super T, ? extends R> leafFunction, BiFunction<? super T, List<R>, ? extends R> combineFunction) {
+        Map<T, R> results = new ConcurrentHashMap<>();
+        ForkJoinPool.commonPool().invoke(new FoldTask<>(structure, leafFunction, combineFunction, results, root));
+        return results;
+    }
+
+    @Override
+    public final ChangeSubscription subscribe(ChangeSubscriber<T> subscriber, int maxBuffered) {
+        return publisher.subscribe(subscriber, maxBuffered);
     }
 
     /**
-     * Add a left child to the root of the tree
+     * Add a left child to the root of the tree. Fails if the root already has a left child.
      *
      * @param child The child data
      */
     protected void addLeft(T child) {
+        if (root.getLeft() != null) {
+            throw new IllegalArgumentException(format("Data '%s' already has a left child", root.getData()));
+        }
         if (contains(child)) {
             throw new IllegalArgumentException("Data is already in the tree");
         }
         BinaryNode node = new BinaryNode(root, child);
         root.addLeft(node);
+        publisher.publish(TreeChange.Type.ADDED, child, root.getData(), null);
+        publisher.flush();
     }
 
     /**
-     * Add a right child to the root of the tree
+     * Add a right child to the root of the tree. Fails if the root already has a right child.
      *
      * @param child The child data
      */
     protected void addRight(T child) {
+        if (root.getRight() != null) {
+            throw new IllegalArgumentException(format("Data '%s' already has a right child", root.getData()));
+        }
         if (contains(child)) {
             throw new IllegalArgumentException("Data is already in the tree");
         }
         BinaryNode node = new BinaryNode(root, child);
         root.addRight(node);
+        publisher.publish(TreeChange.Type.ADDED, child, root.getData(), null);
+        publisher.flush();
     }
 
     /**
-     * Add a left child to a specific parent.
+     * Add a left child to a specific parent. Fails if the parent already has a left child.
      *
      * @param parent The parent data
      * @param child  The child data
      */
     protected void addLeft(T parent, T child) {
         BinaryNode<T> parentNode = getNode(parent);
+        if (parentNode.getLeft() != null) {
+            throw new IllegalArgumentException(format("Data '%s' already has a left child", parent));
+        }
         if (contains(child)) {
             throw new IllegalArgumentException("Data is already in the tree");
         }
         BinaryNode node = new BinaryNode(parentNode, child);
         parentNode.addLeft(node);
+        publisher.publish(TreeChange.Type.ADDED, child, parentNode.getData(), null);
+        publisher.flush();
     }
 
     /**
-     * Add a right child to a specific parent.
+     * Add a right child to a specific parent. Fails if the parent already has a right child.
      *
      * @param parent The parent data
      * @param child  The child data
      */
     protected void addRight(T parent, T child) {
         BinaryNode<T> parentNode = getNode(parent);
+        if (parentNode.getRight() != null) {
+            throw new IllegalArgumentException(format("Data '%s' already has a right child", parent));
+        }
         if (contains(child)) {
             throw new IllegalArgumentException("Data is already in the tree");
         }
         BinaryNode node = new BinaryNode(parentNode, child);
         parentNode.addRight(node);
+        publisher.publish(TreeChange.Type.ADDED, child, parentNode.getData(), null);
+        publisher.flush();
     }
 
     /**
@@ -132,8 +211,8 @@ abstract class AbstractBinaryTree<T> implements Tree<T> {
      * @return The child data
      */
     public final Optional<T> getLeft(T parent) {
-        return makePreOrderDepthStream(root)
-                .filter(node -> node.getData().equals(parent))
+        return TreeIterators.preOrderNodes(structure)
+                .filter(node -> equivalence.equivalent(node.getData(), parent))
                 .findFirst()
                 .map(BinaryNode::getLeft)
                 .map(BinaryNode::getData);
@@ -146,8 +225,8 @@ abstract class AbstractBinaryTree<T> implements Tree<T> {
      * @return The child data
      */
     public final Optional<T> getRight(T parent) {
-        return makePreOrderDepthStream(root)
-                .filter(node -> node.getData().equals(parent))
+        return TreeIterators.preOrderNodes(structure)
+                .filter(node -> equivalence.equivalent(node.getData(), parent))
                 .findFirst()
                 .map(BinaryNode::getRight)
                 .map(BinaryNode::getData);
@@ -160,8 +239,8 @@ abstract class AbstractBinaryTree<T> implements Tree<T> {
      * @return The node
      */
     private BinaryNode<T> getNode(T object) {
-        Optional<BinaryNode<T>> found = makePreOrderDepthStream(root)
-                .filter(node -> node.getData().equals(object))
+        Optional<BinaryNode<T>> found = TreeIterators.preOrderNodes(structure)
+                .filter(node -> equivalence.equivalent(node.getData(), object))
                 .findFirst();
         if (found.isPresent()) {
             return found.get();
@@ -170,84 +249,88 @@ abstract class AbstractBinaryTree<T> implements Tree<T> {
     }
 
     /**
-     * Recursively set up an in-order depth first stream.
+     * Add a new node for data on one side of a parent node, without checking the data or publishing the change. This
+     * is used to build trees quickly from a trusted source.
      *
-     * @param node The point in the tree to work from
-     * @return The stream
+     * @param parentNode The parent node
+     * @param left       Is the child added on the left?
+     * @param child      The child data
+     * @return The new node
      */
-    private Stream<BinaryNode<T>> makeInOrderDepthStream(BinaryNode<T> node) {
-        // Inorder   (Left, Root, Right)
-        BinaryNode<T> left = node.getLeft();
-        BinaryNode<T> right = node.getRight();
-        return Stream.concat(
-                left != null ? Stream.of(left).flatMap(this::makeInOrderDepthStream) : Stream.empty(),
-                Stream.concat(Stream.of(node),
-                        right != null ? Stream.of(right).flatMap(this::makeInOrderDepthStream) : Stream.empty()));
+    final BinaryNode<T> addNode(BinaryNode<T> parentNode, boolean left, T child) {
+        BinaryNode<T> node = new BinaryNode<>(parentNode, child);
+        if (left) {
+            parentNode.addLeft(node);
+        } else {
+            parentNode.addRight(node);
+        }
+        return node;
     }
 
     /**
-     * Recursively set up a pre-order depth first stream.
+     * Find the nodes for data with one pass over the tree. The keys are data wrapped with the equivalence of the
+     * tree.
      *
-     * @param node The point in the tree to work from
-     * @return The stream
+     * @param keys The keys of the data to find
+     * @return The nodes found, by key
      */
-    private Stream<BinaryNode<T>> makePreOrderDepthStream(BinaryNode<T> node) {
-        // Preorder  (Root, Left, Right)
-        BinaryNode<T> left = node.getLeft();
-        BinaryNode<T> right = node.getRight();
-        return Stream.concat(Stream.of(node),
-                Stream.concat(
-                        left != null ? Stream.of(left).flatMap(this::makePreOrderDepthStream) : Stream.empty(),
-                        right != null ? Stream.of(right).flatMap(this::makePreOrderDepthStream) : Stream.empty()));
+    final Map<Object, BinaryNode<T>> findNodes(Set<Object> keys) {
+        return TreeIterators.find(structure, equivalence::wrap, keys);
     }
 
-    /**
-     * Recursively set up a post-order depth first stream.
-     *
-     * @param node The point in the tree to work from
-     * @return The stream
-     */
-    private Stream<BinaryNode<T>> makePostOrderDepthStream(BinaryNode<T> node) {
-        // Postorder (Left, Right, Root) : 4 5 2 3 1
-        BinaryNode<T> left = node.getLeft();
-        BinaryNode<T> right = node.getRight();
-        return Stream.concat(
-                left != null ? Stream.of(left).flatMap(this::makePostOrderDepthStream) : Stream.empty(),
-                Stream.concat(
-                        right != null ? Stream.of(right).flatMap(this::makePostOrderDepthStream) : Stream.empty(),
-                        Stream.of(node)));
-    }
+    /** Iterates over the nodes in order, keeping the path to the next node on a stack */
+    private final class InOrderIterator implements Iterator<BinaryNode<T>> {
 
-    /**
-     * Recursively set up a breadth first stream.
-     *
-     * @return The stream
-     */
-    private Stream<T> makeBreadthStream(List<T> data) {
-        if (data.isEmpty()) {
-            return Stream.empty();
+        private final Deque<BinaryNode<T>> path = new ArrayDeque<>();
+
+        private InOrderIterator() {
+            descendLeft(root);
         }
-        return Stream.concat(data.stream(),
-                makeBreadthStream(data.stream().flatMap(object -> streamOfChildren(object)).collect(Collectors.toList())));
-    }
 
-    private Stream<T> streamOfChildren(T val) {
-        Optional<T> left = getLeft(val);
-        Optional<T> right = getRight(val);
-        return Stream.concat(left.isPresent() ? Stream.of(left.get()) : Stream.empty(), right.isPresent() ? Stream.of(right.get()) : Stream.empty());
-    }
+        @Override
+        public boolean hasNext() {
+            return !path.isEmpty();
+        }
+
+        @Override
+        public BinaryNode<T> next() {
+            if (path.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            BinaryNode<T> node = path.pop();
+            descendLeft(node.getRight());
+            return node;
+        }
 
-    private int calculateDepth(BinaryNode<T> node) {
-        if (node == null) {
-            return 0;
+        private void descendLeft(BinaryNode<T> node) {
+            for (; node != null; node = node.getLeft()) {
+                path.push(node);
+            }
         }
-        return 1 + Math.max(calculateDepth(node.getLeft()), calculateDepth(node.getRight()));
     }
 
-    private int calculateWidth(BinaryNode<T> node) {
-        if (node == null) {
-            return 0;
+    private final class Structure implements TreeStructure<BinaryNode<T>, T> {
+
+        @Override
+        public BinaryNode<T> getRoot() {
+            return root;
+        }
+
+        @Override
+        public T getData(BinaryNode<T> node) {
+            return node.getData();
+        }
+
+        @Override
+        public List<BinaryNode<T>> getChildren(BinaryNode<T> node) {
+            List<BinaryNode<T>> children = new ArrayList<>(2);
+            if (node.getLeft() != null) {
+                children.add(node.getLeft());
+            }
+            if (node.getRight() != null) {
+                children.add(node.getRight());
+            }
+            return children;
         }
-        return Math.max(1, calculateWidth(node.getLeft()) + calculateWidth(node.getRight()));
     }
 }
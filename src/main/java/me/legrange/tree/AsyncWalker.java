@@ -0,0 +1,143 @@
+package me.legrange.tree;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static java.lang.String.format;
+
+/** Runs an asynchronous function for every node of a tree, keeping a bounded number of calls in flight. The walk
+ * stops at the first failure.
+ *
+ * @param <N> The type of the nodes
+ * @param <T> The type of the data contained in the nodes
+ * @param <R> The type of the results
+ */
+final class AsyncWalker<N, T, R> {
+
+    private final TreeStructure<N, T> structure;
+    private final Function<? super T, ? extends CompletionStage<? extends R>> function;
+    private final int maxInFlight;
+    private final boolean parentFirst;
+    private final Executor executor;
+    private final Map<T, R> results = new ConcurrentHashMap<>();
+    private final CompletableFuture<Map<T, R>> done = new CompletableFuture<>();
+    private final Deque<N> pending = new ArrayDeque<>();
+    /** Makes sure only one thread dispatches at a time, without recursion when calls complete immediately */
+    private final AtomicInteger dispatchRequests = new AtomicInteger();
+    private int inFlight;
+
+    /**
+     * Create a new walker.
+     *
+     * @param structure   The tree structure
+     * @param function    The function to call for each node's data
+     * @param maxInFlight The maximum number of calls that have not completed yet
+     * @param parentFirst Must the call for a node complete before its children are started?
+     * @param executor    The executor on which the function is called
+     */
+    AsyncWalker(TreeStructure<N, T> structure, Function<? super T, ? extends CompletionStage<? extends R>> function,
+                int maxInFlight, boolean parentFirst, Executor executor) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("At least one call must be allowed in flight");
+        }
+        this.structure = structure;
+        this.function = function;
+        this.maxInFlight = maxInFlight;
+        this.parentFirst = parentFirst;
+        this.executor = executor;
+    }
+
+    /**
+     * Start the walk.
+     *
+     * @return A future that completes with the result for every node, or with the first failure
+     */
+    CompletableFuture<Map<T, R>> start() {
+        pending.add(structure.getRoot());
+        dispatch();
+        return done;
+    }
+
+    private void dispatch() {
+        if (dispatchRequests.getAndIncrement() != 0) {
+            return;
+        }
+        do {
+            N node;
+            while ((node = next()) != null) {
+                N started = node;
+                try {
+                    executor.execute(() -> call(started));
+                } catch (RuntimeException ex) {
+                    done.completeExceptionally(ex);
+                }
+            }
+        } while (dispatchRequests.decrementAndGet() != 0);
+    }
+
+    /**
+     * Take the next node to start, if a call may be started.
+     *
+     * @return The node, or null if none may be started now
+     */
+    private synchronized N next() {
+        if (done.isDone() || inFlight >= maxInFlight || pending.isEmpty()) {
+            return null;
+        }
+        N node = pending.poll();
+        inFlight++;
+        if (!parentFirst) {
+            pending.addAll(structure.getChildren(node));
+        }
+        return node;
+    }
+
+    private void call(N node) {
+        T data = structure.getData(node);
+        CompletionStage<? extends R> stage;
+        try {
+            stage = function.apply(data);
+        } catch (RuntimeException ex) {
+            done.completeExceptionally(ex);
+            return;
+        }
+        if (stage == null) {
+            done.completeExceptionally(new NullPointerException(format("No result stage for '%s'", data)));
+            return;
+        }
+        stage.whenComplete((result, error) -> {
+            if (error != null) {
+                done.completeExceptionally(error);
+            } else if (result == null) {
+                done.completeExceptionally(new NullPointerException(format("Null result for '%s'", data)));
+            } else {
+                results.put(data, result);
+                completed(node);
+            }
+        });
+    }
+
+    private void completed(N node) {
+        boolean finished;
+        synchronized (this) {
+            inFlight--;
+            if (parentFirst) {
+                pending.addAll(structure.getChildren(node));
+            }
+            finished = inFlight == 0 && pending.isEmpty();
+        }
+        if (finished) {
+            done.complete(results);
+        } else {
+            dispatch();
+        }
+    }
+
+}
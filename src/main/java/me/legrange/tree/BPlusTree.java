@@ -0,0 +1,330 @@
+package me.legrange.tree;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * An ordered set of data kept in a B+tree. Unlike the binary search tree, each node holds many data items in a
+ * sorted array, so a lookup visits only a few nodes and reads each of them sequentially. All the data is kept in
+ * the leaves, which are linked in order, so an in-order stream is a scan along the leaves.
+ *
+ * @param <T> The type of data stored in the tree
+ */
+public final class BPlusTree<T extends Comparable> {
+
+    /** The fan-out used if none is given */
+    public static final int DEFAULT_FAN_OUT = 64;
+
+    private final int fanOut;
+    private Node root;
+    private final Leaf first;
+    private int size;
+    private int depth = 1;
+
+    /**
+     * Create a new, empty tree with the default fan-out.
+     */
+    public BPlusTree() {
+        this(DEFAULT_FAN_OUT);
+    }
+
+    /**
+     * Create a new, empty tree.
+     *
+     * @param fanOut The maximum number of children of an inner node, and of data items in a leaf
+     */
+    public BPlusTree(int fanOut) {
+        if (fanOut < 3) {
+            throw new IllegalArgumentException("The fan-out must be at least 3");
+        }
+        this.fanOut = fanOut;
+        this.first = new Leaf(fanOut);
+        this.root = first;
+    }
+
+    /**
+     * Add data to the tree.
+     *
+     * @param data The data
+     */
+    public void add(T data) {
+        Deque<Inner> path = new ArrayDeque<>();
+        Deque<Integer> positions = new ArrayDeque<>();
+        Node node = root;
+        while (node instanceof Inner) {
+            Inner inner = (Inner) node;
+            int position = childIndex(inner, data);
+            path.push(inner);
+            positions.push(position);
+            node = inner.children[position];
+        }
+        Leaf leaf = (Leaf) node;
+        int position = search(leaf.keys, leaf.size, data);
+        if (position >= 0) {
+            throw new IllegalArgumentException("Data is already in the tree");
+        }
+        leaf.insert(-(position + 1), data);
+        size++;
+        if (leaf.size <= fanOut) {
+            return;
+        }
+        Leaf right = leaf.split();
+        Object separator = right.keys[0];
+        Node newChild = right;
+        while (!path.isEmpty()) {
+            Inner parent = path.pop();
+            parent.insert(positions.pop(), separator, newChild);
+            if (parent.size <= fanOut) {
+                return;
+            }
+            separator = parent.keys[parent.size / 2 - 1];
+            newChild = parent.split();
+        }
+        Inner newRoot = new Inner(fanOut);
+        newRoot.children[0] = root;
+        newRoot.insert(0, separator, newChild);
+        root = newRoot;
+        depth++;
+    }
+
+    /**
+     * Add all the given data to the tree. All the data is checked before the tree is changed, so if any of it is
+     * already in the tree, or appears more than once, nothing is added.
+     *
+     * @param data The data
+     */
+    public void addAll(Collection<? extends T> data) {
+        Set<T> seen = new TreeSet<>();
+        for (T item : data) {
+            if (!seen.add(item) || contains(item)) {
+                throw new IllegalArgumentException("Data is already in the tree");
+            }
+        }
+        for (T item : data) {
+            add(item);
+        }
+    }
+
+    /**
+     * Check if the tree contains the given data.
+     *
+     * @param data The data
+     * @return Is it in the tree?
+     */
+    public boolean contains(T data) {
+        Leaf leaf = findLeaf(data);
+        return search(leaf.keys, leaf.size, data) >= 0;
+    }
+
+    /**
+     * Find the data closest to the search term in the tree: the data equal to it, else the smallest data larger than
+     * it, else the largest data in the tree.
+     *
+     * @param data The search term
+     * @return The closest found data
+     */
+    public T find(T data) {
+        if (size == 0) {
+            throw new NoSuchElementException("The tree is empty");
+        }
+        Leaf leaf = findLeaf(data);
+        int position = search(leaf.keys, leaf.size, data);
+        if (position >= 0) {
+            return leaf.get(position);
+        }
+        position = -(position + 1);
+        if (position < leaf.size) {
+            return leaf.get(position);
+        }
+        if (leaf.next != null) {
+            return leaf.next.get(0);
+        }
+        return leaf.get(leaf.size - 1);
+    }
+
+    /**
+     * Return a stream of the data in the tree, in order.
+     *
+     * @return The stream
+     */
+    public Stream<T> inOrderDepthStream() {
+        Spliterator<T> spliterator = Spliterators.spliterator(new LeafIterator(), size,
+                Spliterator.ORDERED | Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false);
+    }
+
+    /**
+     * Return the number of data items in the tree.
+     *
+     * @return The size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Return the depth of the tree, which is the number of nodes visited by a lookup.
+     *
+     * @return The depth
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    private Leaf findLeaf(T data) {
+        Node node = root;
+        while (node instanceof Inner) {
+            Inner inner = (Inner) node;
+            node = inner.children[childIndex(inner, data)];
+        }
+        return (Leaf) node;
+    }
+
+    /**
+     * Find the child of an inner node to descend into for data. Data equal to a separator is in the child to the
+     * right of it.
+     */
+    private static int childIndex(Inner inner, Comparable data) {
+        int position = search(inner.keys, inner.size - 1, data);
+        return position >= 0 ? position + 1 : -(position + 1);
+    }
+
+    /**
+     * Binary search in a sorted array.
+     *
+     * @return The position of the data, or (-(insertion point) - 1) if it is not in the array
+     */
+    private static int search(Object[] keys, int count, Comparable data) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int diff = ((Comparable) keys[middle]).compareTo(data);
+            if (diff < 0) {
+                low = middle + 1;
+            } else if (diff > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private abstract static class Node {
+
+        /** The number of data items in a leaf, or children of an inner node */
+        int size;
+        final Object[] keys;
+
+        Node(int capacity) {
+            keys = new Object[capacity];
+        }
+    }
+
+    /** A leaf, holding up to fan-out data items, with room for one more before it is split */
+    private static final class Leaf extends Node {
+
+        private Leaf next;
+
+        private Leaf(int fanOut) {
+            super(fanOut + 1);
+        }
+
+        private void insert(int position, Object data) {
+            System.arraycopy(keys, position, keys, position + 1, size - position);
+            keys[position] = data;
+            size++;
+        }
+
+        private Leaf split() {
+            Leaf right = new Leaf(keys.length - 1);
+            int keep = size / 2;
+            right.size = size - keep;
+            System.arraycopy(keys, keep, right.keys, 0, right.size);
+            Arrays.fill(keys, keep, size, null);
+            size = keep;
+            right.next = next;
+            next = right;
+            return right;
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T> T get(int position) {
+            return (T) keys[position];
+        }
+    }
+
+    /** An inner node, holding up to fan-out children and the separators between them, with room for one more */
+    private static final class Inner extends Node {
+
+        private final Node[] children;
+
+        private Inner(int fanOut) {
+            super(fanOut);
+            children = new Node[fanOut + 1];
+            size = 1;
+        }
+
+        /**
+         * Insert a separator and the child to the right of it, after the child at the given position.
+         */
+        private void insert(int position, Object separator, Node child) {
+            System.arraycopy(keys, position, keys, position + 1, size - 1 - position);
+            System.arraycopy(children, position + 1, children, position + 2, size - 1 - position);
+            keys[position] = separator;
+            children[position + 1] = child;
+            size++;
+        }
+
+        /**
+         * Split the node in two. The separator in the middle moves up to the parent, and is not kept in either
+         * half.
+         */
+        private Inner split() {
+            Inner right = new Inner(keys.length);
+            int keep = size / 2;
+            right.size = size - keep;
+            System.arraycopy(keys, keep, right.keys, 0, right.size - 1);
+            System.arraycopy(children, keep, right.children, 0, right.size);
+            Arrays.fill(keys, keep - 1, size - 1, null);
+            Arrays.fill(children, keep, size, null);
+            size = keep;
+            return right;
+        }
+    }
+
+    private final class LeafIterator implements Iterator<T> {
+
+        private Leaf leaf = first;
+        private int position;
+
+        @Override
+        public boolean hasNext() {
+            while (leaf != null && position >= leaf.size) {
+                leaf = leaf.next;
+                position = 0;
+            }
+            return leaf != null;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return leaf.get(position++);
+        }
+    }
+
+}
@@ -1,5 +1,9 @@
 package me.legrange.tree;
 
+import java.util.Collection;
+import java.util.Set;
+import java.util.TreeSet;
+
 public final class BinarySearchTree<T extends Comparable> extends AbstractBinaryTree<T> {
 
     /**
@@ -20,7 +24,36 @@ public final class BinarySearchTree<T extends Comparable> extends AbstractBinary
         if (contains(child)) {
             throw new IllegalArgumentException("Data is already in the tree");
         }
-        BinaryNode<T> parent = findParent(root, child);
+        insert(child);
+        publisher.flush();
+    }
+
+    /**
+     * Add all the given data to the tree. All the data is checked before the tree is changed, so if any of it is
+     * already in the tree, or appears more than once, nothing is added.
+     *
+     * @param children The data to add
+     */
+    public void addAll(Collection<? extends T> children) {
+        Set<T> seen = new TreeSet<>();
+        for (T child : children) {
+            if (!seen.add(child) || find(child).compareTo(child) == 0) {
+                throw new IllegalArgumentException("Data is already in the tree");
+            }
+        }
+        for (T child : children) {
+            insert(child);
+        }
+        publisher.flush();
+    }
+
+    /**
+     * Insert data below the node it sorts next to.
+     *
+     * @param child The child data
+     */
+    private void insert(T child) {
+        BinaryNode<T> parent = findParent(child);
         BinaryNode<T> newNode = new BinaryNode<>(parent, child);
         int diff = child.compareTo(parent.getData());
         if (diff < 0) {
@@ -30,6 +63,7 @@ public final class BinarySearchTree<T extends Comparable> extends AbstractBinary
         } else {
             throw new IllegalArgumentException("Duplicate element");
         }
+        publisher.publish(TreeChange.Type.ADDED, child, parent.getData(), null);
     }
 
     /**
@@ -39,30 +73,24 @@ public final class BinarySearchTree<T extends Comparable> extends AbstractBinary
      * @return The closest found data
      */
     public T find(T data) {
-        return findParent(root, data).getData();
+        return findParent(data).getData();
     }
 
     /** Find the best node for the given data. Best means the value
      * compares to the data in the node, or there are no children to search for this node.
      *
-     * @param node
-     * @param value
-     * @return
+     * @param value The data
+     * @return The node
      */
-    private BinaryNode<T> findParent(BinaryNode<T> node, T value) {
-        int diff = value.compareTo(node.getData());
-        if (diff < 0) {
-            if (node.getLeft() == null) {
+    private BinaryNode<T> findParent(T value) {
+        BinaryNode<T> node = root;
+        while (true) {
+            int diff = value.compareTo(node.getData());
+            BinaryNode<T> next = diff < 0 ? node.getLeft() : diff > 0 ? node.getRight() : null;
+            if (next == null) {
                 return node;
             }
-            return findParent(node.getLeft(), value);
-        } else if (diff > 0) {
-            if (node.getRight() == null) {
-                return node;
-            }
-            return findParent(node.getRight(), value);
-        } else {
-            return node;
+            node = next;
         }
     }
 
@@ -0,0 +1,560 @@
+package me.legrange.tree;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static java.lang.String.format;
+
+/**
+ * An ordered map kept in a binary search tree, with each value stored in the node of its key. Every lookup, insert
+ * and removal is a single descent from the root. Like the binary search tree, the tree is not rebalanced, so keys
+ * added in random order give the best performance.
+ * <p>
+ * Iteration is in key order. The navigation methods follow the names used by NavigableMap, but the sub-map and
+ * descending views of NavigableMap are not provided. Like those of NavigableMap, the entries they return are
+ * snapshots of the mapping at the time of the call, and do not support setValue().
+ *
+ * @param <K> The type of the keys
+ * @param <V> The type of the values
+ */
+public final class BinarySearchTreeMap<K extends Comparable, V> extends AbstractMap<K, V> {
+
+    private Node<K, V> root;
+    private int size;
+    private int modCount;
+    private EntrySet entrySet;
+
+    /**
+     * Create a new, empty map.
+     */
+    public BinarySearchTreeMap() {
+    }
+
+    /**
+     * Create a new map with the mappings in another map.
+     *
+     * @param map The mappings
+     */
+    public BinarySearchTreeMap(Map<? extends K, ? extends V> map) {
+        putAll(map);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return findNode(key) != null;
+    }
+
+    @Override
+    public V get(Object key) {
+        Node<K, V> node = findNode(key);
+        return node == null ? null : node.value;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        Objects.requireNonNull(key, "Keys cannot be null");
+        if (root == null) {
+            root = new Node<>(key, value, null);
+            size++;
+            modCount++;
+            return null;
+        }
+        Node<K, V> parent;
+        Node<K, V> node = root;
+        int diff;
+        do {
+            parent = node;
+            diff = compare(key, node.key);
+            if (diff < 0) {
+                node = node.left;
+            } else if (diff > 0) {
+                node = node.right;
+            } else {
+                return node.setValue(value);
+            }
+        } while (node != null);
+        link(parent, diff, new Node<>(key, value, parent));
+        return null;
+    }
+
+    @Override
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        Objects.requireNonNull(key, "Keys cannot be null");
+        Node<K, V> parent = null;
+        Node<K, V> node = root;
+        int diff = 0;
+        while (node != null) {
+            diff = compare(key, node.key);
+            if (diff == 0) {
+                break;
+            }
+            parent = node;
+            node = diff < 0 ? node.left : node.right;
+        }
+        if (node != null && node.value != null) {
+            return node.value;
+        }
+        int expectedModCount = modCount;
+        V value = mappingFunction.apply(key);
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException("The mapping function changed the map");
+        }
+        if (value == null) {
+            return null;
+        }
+        if (node != null) {
+            node.value = value;
+        } else if (parent == null) {
+            root = new Node<>(key, value, null);
+            size++;
+            modCount++;
+        } else {
+            link(parent, diff, new Node<>(key, value, parent));
+        }
+        return value;
+    }
+
+    @Override
+    public V remove(Object key) {
+        Node<K, V> node = findNode(key);
+        if (node == null) {
+            return null;
+        }
+        V old = node.value;
+        delete(node);
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        root = null;
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new EntrySet();
+        }
+        return entrySet;
+    }
+
+    /**
+     * Return a stream of the entries in the map, in key order.
+     *
+     * @return The stream
+     */
+    public Stream<Entry<K, V>> entryStream() {
+        Spliterator<Entry<K, V>> spliterator = Spliterators.spliterator(new EntryIterator(), size,
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false);
+    }
+
+    /**
+     * Return the entry with the smallest key.
+     *
+     * @return The entry, or null if the map is empty
+     */
+    public Entry<K, V> firstEntry() {
+        return snapshot(firstNode());
+    }
+
+    /**
+     * Return the entry with the largest key.
+     *
+     * @return The entry, or null if the map is empty
+     */
+    public Entry<K, V> lastEntry() {
+        return snapshot(lastNode());
+    }
+
+    /**
+     * Return the smallest key.
+     *
+     * @return The key
+     */
+    public K firstKey() {
+        return keyOf(firstNode());
+    }
+
+    /**
+     * Return the largest key.
+     *
+     * @return The key
+     */
+    public K lastKey() {
+        return keyOf(lastNode());
+    }
+
+    /**
+     * Return the entry with the largest key less than or equal to the given key.
+     *
+     * @param key The key
+     * @return The entry, or null if there is none
+     */
+    public Entry<K, V> floorEntry(K key) {
+        return snapshot(closest(key, true, true));
+    }
+
+    /**
+     * Return the entry with the smallest key greater than or equal to the given key.
+     *
+     * @param key The key
+     * @return The entry, or null if there is none
+     */
+    public Entry<K, V> ceilingEntry(K key) {
+        return snapshot(closest(key, false, true));
+    }
+
+    /**
+     * Return the entry with the largest key strictly less than the given key.
+     *
+     * @param key The key
+     * @return The entry, or null if there is none
+     */
+    public Entry<K, V> lowerEntry(K key) {
+        return snapshot(closest(key, true, false));
+    }
+
+    /**
+     * Return the entry with the smallest key strictly greater than the given key.
+     *
+     * @param key The key
+     * @return The entry, or null if there is none
+     */
+    public Entry<K, V> higherEntry(K key) {
+        return snapshot(closest(key, false, false));
+    }
+
+    /**
+     * Return the largest key less than or equal to the given key.
+     *
+     * @param key The key
+     * @return The key, or null if there is none
+     */
+    public K floorKey(K key) {
+        Node<K, V> node = closest(key, true, true);
+        return node == null ? null : node.key;
+    }
+
+    /**
+     * Return the smallest key greater than or equal to the given key.
+     *
+     * @param key The key
+     * @return The key, or null if there is none
+     */
+    public K ceilingKey(K key) {
+        Node<K, V> node = closest(key, false, true);
+        return node == null ? null : node.key;
+    }
+
+    /**
+     * Return the largest key strictly less than the given key.
+     *
+     * @param key The key
+     * @return The key, or null if there is none
+     */
+    public K lowerKey(K key) {
+        Node<K, V> node = closest(key, true, false);
+        return node == null ? null : node.key;
+    }
+
+    /**
+     * Return the smallest key strictly greater than the given key.
+     *
+     * @param key The key
+     * @return The key, or null if there is none
+     */
+    public K higherKey(K key) {
+        Node<K, V> node = closest(key, false, false);
+        return node == null ? null : node.key;
+    }
+
+    private K keyOf(Node<K, V> node) {
+        if (node == null) {
+            throw new NoSuchElementException("The map is empty");
+        }
+        return node.key;
+    }
+
+    private Node<K, V> firstNode() {
+        return root == null ? null : leftmost(root);
+    }
+
+    private Node<K, V> lastNode() {
+        Node<K, V> node = root;
+        while (node != null && node.right != null) {
+            node = node.right;
+        }
+        return node;
+    }
+
+    /**
+     * Return an immutable copy of the mapping in a node. Nodes cannot be handed out, since removing a key can move
+     * another mapping into the node of that key.
+     *
+     * @param node The node
+     * @return The entry, or null if there is no node
+     */
+    private static <K, V> Entry<K, V> snapshot(Node<K, V> node) {
+        return node == null ? null : new SimpleImmutableEntry<>(node.key, node.value);
+    }
+
+    private Node<K, V> findNode(Object key) {
+        Objects.requireNonNull(key, "Keys cannot be null");
+        Node<K, V> node = root;
+        while (node != null) {
+            int diff = compare(key, node.key);
+            if (diff < 0) {
+                node = node.left;
+            } else if (diff > 0) {
+                node = node.right;
+            } else {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find the node with the closest key below or above the given key, in one descent.
+     *
+     * @param key       The key
+     * @param below     Look for keys below the given key, rather than above it?
+     * @param inclusive Does a node with the given key itself count?
+     * @return The node, or null if there is none
+     */
+    private Node<K, V> closest(K key, boolean below, boolean inclusive) {
+        Objects.requireNonNull(key, "Keys cannot be null");
+        Node<K, V> best = null;
+        Node<K, V> node = root;
+        while (node != null) {
+            int diff = compare(key, node.key);
+            if (diff == 0 && inclusive) {
+                return node;
+            }
+            if (below ? diff > 0 : diff < 0) {
+                best = node;
+                node = below ? node.right : node.left;
+            } else {
+                node = below ? node.left : node.right;
+            }
+        }
+        return best;
+    }
+
+    private void link(Node<K, V> parent, int diff, Node<K, V> node) {
+        if (diff < 0) {
+            parent.left = node;
+        } else {
+            parent.right = node;
+        }
+        size++;
+        modCount++;
+    }
+
+    /**
+     * Unlink a node. A node with two children takes over the key and value of its successor, and the successor is
+     * unlinked instead.
+     *
+     * @param node The node
+     */
+    private void delete(Node<K, V> node) {
+        if (node.left != null && node.right != null) {
+            Node<K, V> successor = leftmost(node.right);
+            node.key = successor.key;
+            node.value = successor.value;
+            node = successor;
+        }
+        Node<K, V> replacement = node.left != null ? node.left : node.right;
+        if (replacement != null) {
+            replacement.parent = node.parent;
+        }
+        if (node.parent == null) {
+            root = replacement;
+        } else if (node == node.parent.left) {
+            node.parent.left = replacement;
+        } else {
+            node.parent.right = replacement;
+        }
+        node.left = null;
+        node.right = null;
+        node.parent = null;
+        size--;
+        modCount++;
+    }
+
+    private static <K, V> Node<K, V> leftmost(Node<K, V> node) {
+        while (node.left != null) {
+            node = node.left;
+        }
+        return node;
+    }
+
+    private static <K, V> Node<K, V> successor(Node<K, V> node) {
+        if (node.right != null) {
+            return leftmost(node.right);
+        }
+        Node<K, V> child = node;
+        Node<K, V> parent = node.parent;
+        while (parent != null && child == parent.right) {
+            child = parent;
+            parent = parent.parent;
+        }
+        return parent;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compare(Object key, Object other) {
+        return ((Comparable) key).compareTo(other);
+    }
+
+    private static final class Node<K, V> implements Entry<K, V> {
+
+        private K key;
+        private V value;
+        private Node<K, V> parent;
+        private Node<K, V> left;
+        private Node<K, V> right;
+
+        private Node(K key, V value, Node<K, V> parent) {
+            this.key = key;
+            this.value = value;
+            this.parent = parent;
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public V setValue(V value) {
+            V old = this.value;
+            this.value = value;
+            return old;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry<?, ?> that = (Entry<?, ?>) o;
+            return Objects.equals(key, that.getKey()) && Objects.equals(value, that.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(key) ^ Objects.hashCode(value);
+        }
+
+        @Override
+        public String toString() {
+            return format("%s=%s", key, value);
+        }
+    }
+
+    private final class EntrySet extends AbstractSet<Entry<K, V>> {
+
+        @Override
+        public Iterator<Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry<?, ?> entry = (Entry<?, ?>) o;
+            Node<K, V> node = entry.getKey() == null ? null : findNode(entry.getKey());
+            return node != null && Objects.equals(node.value, entry.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!contains(o)) {
+                return false;
+            }
+            delete(findNode(((Entry<?, ?>) o).getKey()));
+            return true;
+        }
+
+        @Override
+        public void clear() {
+            BinarySearchTreeMap.this.clear();
+        }
+    }
+
+    /** Iterates over the entries in key order, by following successors */
+    private final class EntryIterator implements Iterator<Entry<K, V>> {
+
+        private Node<K, V> next = root == null ? null : leftmost(root);
+        private Node<K, V> lastReturned;
+        private int expectedModCount = modCount;
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            lastReturned = next;
+            next = successor(next);
+            return lastReturned;
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (lastReturned.left != null && lastReturned.right != null) {
+                // the successor moves into the returned node
+                next = lastReturned;
+            }
+            delete(lastReturned);
+            expectedModCount = modCount;
+            lastReturned = null;
+        }
+    }
+
+}
@@ -1,6 +1,15 @@
 package me.legrange.tree;
 
-import java.util.stream.Stream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import static java.lang.String.format;
 
 public final class BinaryTree<T> extends AbstractBinaryTree<T> {
 
@@ -14,7 +23,18 @@ public final class BinaryTree<T> extends AbstractBinaryTree<T> {
     }
 
     /**
-     * Add a left child to the root of the tree
+     * Create a new binary tree with the given data at the root, in which data is compared with the given
+     * equivalence rather than with equals() and hashCode().
+     *
+     * @param rootData    The data for the root
+     * @param equivalence The equivalence that decides when data is the same
+     */
+    public BinaryTree(T rootData, Equivalence<? super T> equivalence) {
+        super(rootData, equivalence);
+    }
+
+    /**
+     * Add a left child to the root of the tree. Fails if the root already has a left child.
      *
      * @param child The child data
      */
@@ -23,7 +43,7 @@ public final class BinaryTree<T> extends AbstractBinaryTree<T> {
     }
 
     /**
-     * Add a right child to the root of the tree
+     * Add a right child to the root of the tree. Fails if the root already has a right child.
      *
      * @param child The child data
      */
@@ -32,7 +52,7 @@ public final class BinaryTree<T> extends AbstractBinaryTree<T> {
     }
 
     /**
-     * Add a left child to a specific parent.
+     * Add a left child to a specific parent. Fails if the parent already has a left child.
      *
      * @param parent The parent data
      * @param child  The child data
@@ -42,7 +62,7 @@ public final class BinaryTree<T> extends AbstractBinaryTree<T> {
     }
 
     /**
-     * Add a right child to a specific parent.
+     * Add a right child to a specific parent. Fails if the parent already has a right child.
      *
      * @param parent The parent data
      * @param child  The child data
@@ -51,4 +71,135 @@ public final class BinaryTree<T> extends AbstractBinaryTree<T> {
         super.addRight(parent, child);
     }
 
+    /**
+     * Start a new batch of additions to the tree.
+     *
+     * @return The batch
+     */
+    public Batch batch() {
+        return new Batch();
+    }
+
+    /**
+     * A set of additions that are applied to the tree together. All the data referenced by the batch is resolved
+     * with a single pass over the tree, and the whole batch is validated before the tree is changed. Additions may
+     * refer to data added earlier in the same batch.
+     * <p>
+     * A batch is all-or-nothing: adding data that is already in the tree, adding to a side of a parent that
+     * already has a child, or referring to data that is not in the tree fails the batch and leaves the tree
+     * unchanged.
+     */
+    public final class Batch {
+
+        private final List<Addition<T>> additions = new ArrayList<>();
+
+        private Batch() {
+        }
+
+        /**
+         * Add a left child to the root of the tree
+         *
+         * @param child The child data
+         * @return The batch
+         */
+        public Batch addLeft(T child) {
+            return addLeft(root.getData(), child);
+        }
+
+        /**
+         * Add a right child to the root of the tree
+         *
+         * @param child The child data
+         * @return The batch
+         */
+        public Batch addRight(T child) {
+            return addRight(root.getData(), child);
+        }
+
+        /**
+         * Add a left child to a specific parent.
+         *
+         * @param parent The parent data
+         * @param child  The child data
+         * @return The batch
+         */
+        public Batch addLeft(T parent, T child) {
+            additions.add(new Addition<>(parent, child, true));
+            return this;
+        }
+
+        /**
+         * Add a right child to a specific parent.
+         *
+         * @param parent The parent data
+         * @param child  The child data
+         * @return The batch
+         */
+        public Batch addRight(T parent, T child) {
+            additions.add(new Addition<>(parent, child, false));
+            return this;
+        }
+
+        /**
+         * Validate the additions in the batch and apply them to the tree. The batch is emptied once it has been
+         * applied.
+         */
+        public void apply() {
+            Set<Object> keys = new HashSet<>();
+            for (Addition<T> addition : additions) {
+                keys.add(equivalence.wrap(addition.parent));
+                keys.add(equivalence.wrap(addition.child));
+            }
+            Map<Object, BinaryNode<T>> index = findNodes(keys);
+            Set<BinaryNode<T>> leftTaken = Collections.newSetFromMap(new IdentityHashMap<>());
+            Set<BinaryNode<T>> rightTaken = Collections.newSetFromMap(new IdentityHashMap<>());
+            List<BinaryNode<T>> nodes = new ArrayList<>(additions.size());
+            for (Addition<T> addition : additions) {
+                BinaryNode<T> parentNode = index.get(equivalence.wrap(addition.parent));
+                if (parentNode == null) {
+                    throw new NoSuchElementException(format("No data found for object '%s'", addition.parent));
+                }
+                Object key = equivalence.wrap(addition.child);
+                if (index.containsKey(key)) {
+                    throw new IllegalArgumentException("Data is already in the tree");
+                }
+                boolean free = addition.left
+                        ? parentNode.getLeft() == null && leftTaken.add(parentNode)
+                        : parentNode.getRight() == null && rightTaken.add(parentNode);
+                if (!free) {
+                    throw new IllegalArgumentException(format("Data '%s' already has a %s child", addition.parent,
+                            addition.left ? "left" : "right"));
+                }
+                BinaryNode<T> node = new BinaryNode<>(parentNode, addition.child);
+                index.put(key, node);
+                nodes.add(node);
+            }
+            for (int i = 0; i < nodes.size(); ++i) {
+                BinaryNode<T> node = nodes.get(i);
+                if (additions.get(i).left) {
+                    node.getParentNode().addLeft(node);
+                } else {
+                    node.getParentNode().addRight(node);
+                }
+                publisher.publish(TreeChange.Type.ADDED, node.getData(), node.getParentNode().getData(), null);
+            }
+            additions.clear();
+            publisher.flush();
+        }
+
+    }
+
+    private static final class Addition<T> {
+
+        private final T parent;
+        private final T child;
+        private final boolean left;
+
+        private Addition(T parent, T child, boolean left) {
+            this.parent = parent;
+            this.child = child;
+            this.left = left;
+        }
+    }
+
 }
@@ -0,0 +1,235 @@
+package me.legrange.tree;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static java.lang.String.format;
+
+/** Delivers the changes made to a tree to its subscribers. Changes are published as they are made and buffered per
+ * subscriber, and delivered in batches, within each subscriber's demand, when the tree flushes them. Large batches
+ * of changes are flushed in chunks as they are published, so the buffers do not grow with the size of a batch.
+ *
+ * @param <T> The type of data stored in the tree
+ */
+final class ChangePublisher<T> {
+
+    /** The default number of changes buffered for a subscriber */
+    static final int DEFAULT_MAX_BUFFERED = 65536;
+    /** The number of changes published without a flush after which they are flushed anyway */
+    static final int FLUSH_CHUNK = 1024;
+
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final List<Recorder<T>> recorders = new CopyOnWriteArrayList<>();
+    private int unflushed;
+
+    /**
+     * Subscribe to changes.
+     *
+     * @param subscriber  The subscriber
+     * @param maxBuffered The maximum number of changes to buffer for a subscriber beyond its demand before it is dropped
+     * @return The subscription
+     */
+    ChangeSubscription subscribe(ChangeSubscriber<T> subscriber, int maxBuffered) {
+        if (maxBuffered < 1) {
+            throw new IllegalArgumentException("The buffer size must be at least 1");
+        }
+        Subscription subscription = new Subscription(subscriber, maxBuffered);
+        subscriptions.add(subscription);
+        subscriber.onSubscribe(subscription);
+        return subscription;
+    }
+
+    /**
+     * Add a recorder, which is given every change in the thread that makes it.
+     *
+     * @param recorder The recorder
+     */
+    void addRecorder(Recorder<T> recorder) {
+        recorders.add(recorder);
+    }
+
+    /**
+     * Remove a recorder.
+     *
+     * @param recorder The recorder
+     */
+    void removeRecorder(Recorder<T> recorder) {
+        recorders.remove(recorder);
+    }
+
+    /**
+     * Check if any subscriber or recorder is interested in changes.
+     *
+     * @return Are changes wanted?
+     */
+    boolean isActive() {
+        return !subscriptions.isEmpty() || !recorders.isEmpty();
+    }
+
+    /**
+     * Pass changes that have been made, but not yet published, to the recorders. If a recorder fails, the exception
+     * is thrown and the changes must be undone.
+     *
+     * @param changes The changes
+     */
+    void record(List<TreeChange<T>> changes) {
+        for (Recorder<T> recorder : recorders) {
+            recorder.record(changes);
+        }
+    }
+
+    /**
+     * Publish a change. It is buffered until the next flush.
+     *
+     * @param type      The type of change
+     * @param data      The data changed
+     * @param parent    The new parent
+     * @param oldParent The old parent
+     */
+    void publish(TreeChange.Type type, T data, T parent, T oldParent) {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        publish(new TreeChange<>(type, data, parent, oldParent));
+    }
+
+    /**
+     * Publish a change. It is buffered until the next flush, or until enough changes have been published to flush a
+     * chunk of them.
+     *
+     * @param change The change
+     */
+    void publish(TreeChange<T> change) {
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(change);
+        }
+        if (++unflushed >= FLUSH_CHUNK) {
+            flush();
+        }
+    }
+
+    /**
+     * Deliver the buffered changes to the subscribers that have demand for them.
+     */
+    void flush() {
+        unflushed = 0;
+        for (Subscription subscription : subscriptions) {
+            subscription.drain();
+        }
+    }
+
+    /**
+     * Receives changes synchronously, before they are published to subscribers. Unlike a subscriber, a recorder can
+     * fail a change by throwing an exception.
+     *
+     * @param <T> The type of data stored in the tree
+     */
+    interface Recorder<T> {
+
+        /**
+         * Record changes.
+         *
+         * @param changes The changes
+         */
+        void record(List<TreeChange<T>> changes);
+    }
+
+    private final class Subscription implements ChangeSubscription {
+
+        private final ChangeSubscriber<T> subscriber;
+        private final int maxBuffered;
+        private final Deque<TreeChange<T>> buffer = new ArrayDeque<>();
+        private long demand;
+        private boolean draining;
+        private boolean cancelled;
+
+        private Subscription(ChangeSubscriber<T> subscriber, int maxBuffered) {
+            this.subscriber = subscriber;
+            this.maxBuffered = maxBuffered;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                fail(new IllegalArgumentException(format("Requested %d changes, must be positive", n)));
+                return;
+            }
+            synchronized (this) {
+                demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                cancelled = true;
+                buffer.clear();
+            }
+            subscriptions.remove(this);
+        }
+
+        private void offer(TreeChange<T> change) {
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                // only changes beyond the outstanding demand count against the limit
+                if (buffer.size() - demand < maxBuffered) {
+                    buffer.add(change);
+                    return;
+                }
+            }
+            fail(new IllegalStateException(format("Subscriber fell more than %d changes behind", maxBuffered)));
+        }
+
+        private void drain() {
+            synchronized (this) {
+                if (draining) {
+                    return;
+                }
+                draining = true;
+            }
+            while (true) {
+                List<TreeChange<T>> changes;
+                synchronized (this) {
+                    if (cancelled || demand == 0 || buffer.isEmpty()) {
+                        draining = false;
+                        return;
+                    }
+                    int size = (int) Math.min(demand, buffer.size());
+                    changes = new ArrayList<>(size);
+                    for (int i = 0; i < size; ++i) {
+                        changes.add(buffer.poll());
+                    }
+                    if (demand != Long.MAX_VALUE) {
+                        demand -= size;
+                    }
+                }
+                try {
+                    subscriber.onNext(changes);
+                } catch (RuntimeException ex) {
+                    synchronized (this) {
+                        draining = false;
+                    }
+                    fail(ex);
+                    return;
+                }
+            }
+        }
+
+        private void fail(Throwable error) {
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+            }
+            cancel();
+            subscriber.onError(error);
+        }
+
+    }
+}
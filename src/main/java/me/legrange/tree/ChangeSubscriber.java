@@ -0,0 +1,35 @@
+package me.legrange.tree;
+
+import java.util.List;
+
+/** Receives the changes made to a tree. Changes are delivered in batches, and never more than have been requested
+ * through the subscription. This follows the shape of java.util.concurrent.Flow.Subscriber, so that it is easy to
+ * adapt to reactive libraries.
+ *
+ * @param <T> The type of data stored in the tree
+ */
+public interface ChangeSubscriber<T> {
+
+    /**
+     * Called once when the subscriber is subscribed, before any changes are delivered.
+     *
+     * @param subscription The subscription, used to request changes
+     */
+    void onSubscribe(ChangeSubscription subscription);
+
+    /**
+     * Called with the next changes, in the order they were made.
+     *
+     * @param changes The changes
+     */
+    void onNext(List<TreeChange<T>> changes);
+
+    /**
+     * Called when the subscription ends because of an error, for example when the subscriber did not keep up with
+     * the changes to the tree. No more changes are delivered after this.
+     *
+     * @param error The error
+     */
+    void onError(Throwable error);
+
+}
@@ -0,0 +1,19 @@
+package me.legrange.tree;
+
+/** A subscription to the changes made to a tree.
+ */
+public interface ChangeSubscription {
+
+    /**
+     * Request more changes. Changes that are already waiting are delivered immediately, in the calling thread.
+     *
+     * @param n The number of additional changes the subscriber is ready for. Long.MAX_VALUE means no limit.
+     */
+    void request(long n);
+
+    /**
+     * Stop receiving changes.
+     */
+    void cancel();
+
+}
@@ -0,0 +1,81 @@
+package me.legrange.tree;
+
+import java.util.Objects;
+
+import static java.lang.String.format;
+
+/** A difference between two trees, as found by comparing them.
+ *
+ * @param <T> The type of data stored in the trees
+ */
+public final class Difference<T> {
+
+    /** The kind of difference */
+    public enum Type {
+        /** The data, and its subtree, is only in the other tree */
+        ADDED,
+        /** The data, and its subtree, is only in this tree */
+        REMOVED,
+        /** The data has the same children in both trees, but in a different order */
+        REORDERED
+    }
+
+    private final Type type;
+    private final T data;
+    private final T parent;
+
+    Difference(Type type, T data, T parent) {
+        this.type = type;
+        this.data = data;
+        this.parent = parent;
+    }
+
+    /**
+     * Return the kind of difference.
+     *
+     * @return The type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Return the data that differs.
+     *
+     * @return The data
+     */
+    public T getData() {
+        return data;
+    }
+
+    /**
+     * Return the parent of the data that differs, or null if it is the root.
+     *
+     * @return The parent data
+     */
+    public T getParent() {
+        return parent;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Difference)) {
+            return false;
+        }
+        Difference<?> that = (Difference<?>) o;
+        return type == that.type && Objects.equals(data, that.data) && Objects.equals(parent, that.parent);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, data, parent);
+    }
+
+    @Override
+    public String toString() {
+        return format("%s '%s' under '%s'", type, data, parent);
+    }
+}
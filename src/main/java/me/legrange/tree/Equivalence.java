@@ -0,0 +1,135 @@
+package me.legrange.tree;
+
+import java.util.Objects;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Decides when two data items in a tree are the same. Trees use it to find data, to check for duplicates and to
+ * compare trees, so data with expensive equals() and hashCode() methods can be compared cheaply instead, for example
+ * by identity or by an id.
+ *
+ * @param <T> The type of data compared
+ */
+public final class Equivalence<T> {
+
+    private static final Equivalence<Object> EQUALITY = new Equivalence<>(Objects::equals, Objects::hashCode, true);
+    private static final Equivalence<Object> IDENTITY = new Equivalence<>((a, b) -> a == b, System::identityHashCode, false);
+
+    private final BiPredicate<? super T, ? super T> equals;
+    private final ToIntFunction<? super T> hash;
+    private final boolean natural;
+
+    private Equivalence(BiPredicate<? super T, ? super T> equals, ToIntFunction<? super T> hash, boolean natural) {
+        this.equals = equals;
+        this.hash = hash;
+        this.natural = natural;
+    }
+
+    /**
+     * Return the equivalence that uses equals() and hashCode(). This is what trees use if no equivalence is given.
+     *
+     * @param <T> The type of data compared
+     * @return The equivalence
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Equivalence<T> equality() {
+        return (Equivalence<T>) EQUALITY;
+    }
+
+    /**
+     * Return the equivalence under which data is only the same as itself.
+     *
+     * @param <T> The type of data compared
+     * @return The equivalence
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Equivalence<T> identity() {
+        return (Equivalence<T>) IDENTITY;
+    }
+
+    /**
+     * Return an equivalence under which data is the same if the keys extracted from it are equal.
+     *
+     * @param key The function that returns the key for data
+     * @param <T> The type of data compared
+     * @return The equivalence
+     */
+    public static <T> Equivalence<T> byKey(Function<? super T, ?> key) {
+        return new Equivalence<>((a, b) -> a == b || a != null && b != null && Objects.equals(key.apply(a), key.apply(b)),
+                data -> data == null ? 0 : Objects.hashCode(key.apply(data)), false);
+    }
+
+    /**
+     * Return an equivalence made from a custom comparison and hash function. Data that is the same must have the
+     * same hash.
+     *
+     * @param equals The function that decides if two data items are the same
+     * @param hash   The hash function
+     * @param <T>    The type of data compared
+     * @return The equivalence
+     */
+    public static <T> Equivalence<T> of(BiPredicate<? super T, ? super T> equals, ToIntFunction<? super T> hash) {
+        return new Equivalence<>(equals, hash, false);
+    }
+
+    /**
+     * Check if two data items are the same.
+     *
+     * @param a The one item
+     * @param b The other item
+     * @return Are they the same?
+     */
+    public boolean equivalent(T a, T b) {
+        return equals.test(a, b);
+    }
+
+    /**
+     * Return the hash of a data item.
+     *
+     * @param data The data
+     * @return The hash
+     */
+    public int hash(T data) {
+        return hash.applyAsInt(data);
+    }
+
+    /**
+     * Return an object that can stand in for data as a hash map key, with equals() and hashCode() that follow this
+     * equivalence.
+     *
+     * @param data The data
+     * @return The key
+     */
+    Object wrap(T data) {
+        return natural ? data : new Wrapper<>(this, data);
+    }
+
+    private static final class Wrapper<T> {
+
+        private final Equivalence<T> equivalence;
+        private final T data;
+
+        private Wrapper(Equivalence<T> equivalence, T data) {
+            this.equivalence = equivalence;
+            this.data = data;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean equals(Object o) {
+            if (!(o instanceof Wrapper)) {
+                return false;
+            }
+            Wrapper<T> that = (Wrapper<T>) o;
+            return equivalence == that.equivalence && equivalence.equivalent(data, that.data);
+        }
+
+        @Override
+        public int hashCode() {
+            return equivalence.hash(data);
+        }
+    }
+
+}
@@ -0,0 +1,128 @@
+package me.legrange.tree;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/** Folds a subtree bottom-up, computing the subtrees of a node in parallel while there is work for idle threads
+ * to steal, and sequentially otherwise.
+ *
+ * @param <N> The type of the nodes
+ * @param <T> The type of the data contained in the nodes
+ * @param <R> The type of the result
+ */
+final class FoldTask<N, T, R> extends RecursiveTask<R> {
+
+    private static final long serialVersionUID = 1L;
+    /** Fork only while fewer than this many tasks are queued and not yet stolen */
+    private static final int MAX_SURPLUS = 3;
+    /** Limit on nested forks, which bounds the stack used on deep trees */
+    private static final int MAX_SPLIT_DEPTH = 64;
+
+    private final TreeStructure<N, T> structure;
+    private final Function<? super T, ? extends R> leafFunction;
+    private final BiFunction<? super T, List<R>, ? extends R> combineFunction;
+    private final Map<T, R> results;
+    private final N node;
+    private final int splitDepth;
+
+    /**
+     * Create a new task.
+     *
+     * @param structure       The tree structure
+     * @param leafFunction    The function applied to leaves
+     * @param combineFunction The function that combines a node with the results for its children
+     * @param results         Map that collects the result for every node, or null if only the result is needed
+     * @param node            The node to fold
+     */
+    FoldTask(TreeStructure<N, T> structure, Function<? super T, ? extends R> leafFunction,
+             BiFunction<? super T, List<R>, ? extends R> combineFunction, Map<T, R> results, N node) {
+        this(structure, leafFunction, combineFunction, results, node, 0);
+    }
+
+    private FoldTask(TreeStructure<N, T> structure, Function<? super T, ? extends R> leafFunction,
+                     BiFunction<? super T, List<R>, ? extends R> combineFunction, Map<T, R> results, N node,
+                     int splitDepth) {
+        this.structure = structure;
+        this.leafFunction = leafFunction;
+        this.combineFunction = combineFunction;
+        this.results = results;
+        this.node = node;
+        this.splitDepth = splitDepth;
+    }
+
+    @Override
+    protected R compute() {
+        List<N> children = structure.getChildren(node);
+        if (children.size() < 2 || splitDepth >= MAX_SPLIT_DEPTH || getSurplusQueuedTaskCount() > MAX_SURPLUS) {
+            return computeSequentially();
+        }
+        List<FoldTask<N, T, R>> forked = new ArrayList<>(children.size() - 1);
+        for (int i = children.size() - 1; i > 0; --i) {
+            forked.add(subTask(children.get(i)));
+            forked.get(forked.size() - 1).fork();
+        }
+        List<R> childResults = new ArrayList<>(children.size());
+        childResults.add(subTask(children.get(0)).compute());
+        for (int i = forked.size() - 1; i >= 0; --i) {
+            childResults.add(forked.get(i).join());
+        }
+        return apply(structure.getData(node), childResults);
+    }
+
+    private FoldTask<N, T, R> subTask(N child) {
+        return new FoldTask<>(structure, leafFunction, combineFunction, results, child, splitDepth + 1);
+    }
+
+    /**
+     * Fold the subtree in post-order, using an explicit stack instead of recursion.
+     *
+     * @return The result for the node
+     */
+    private R computeSequentially() {
+        Deque<Frame<N, R>> stack = new ArrayDeque<>();
+        stack.push(new Frame<>(node, structure.getChildren(node)));
+        while (true) {
+            Frame<N, R> frame = stack.peek();
+            if (frame.next < frame.children.size()) {
+                N child = frame.children.get(frame.next++);
+                stack.push(new Frame<>(child, structure.getChildren(child)));
+                continue;
+            }
+            stack.pop();
+            R result = apply(structure.getData(frame.node), frame.results);
+            if (stack.isEmpty()) {
+                return result;
+            }
+            stack.peek().results.add(result);
+        }
+    }
+
+    private R apply(T data, List<R> childResults) {
+        R result = childResults.isEmpty() ? leafFunction.apply(data) : combineFunction.apply(data, childResults);
+        if (results != null) {
+            results.put(data, result);
+        }
+        return result;
+    }
+
+    private static final class Frame<N, R> {
+
+        private final N node;
+        private final List<N> children;
+        private final List<R> results;
+        private int next;
+
+        private Frame(N node, List<N> children) {
+            this.node = node;
+            this.children = children;
+            this.results = new ArrayList<>(children.size());
+        }
+    }
+
+}
@@ -1,17 +1,37 @@
 package me.legrange.tree;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.function.Function;
 
-/** Tree node structure.
+import static java.lang.String.format;
+
+/** Tree node structure. Most nodes in a tree are leaves, so a leaf only holds its parent and its data. The children,
+ * and everything else only a parent needs, are kept in a separate branch object that is allocated when the first
+ * child is added, and dropped again when the last child is removed.
  *
  * @param <T> The type of the data contained in the node.
  */
 final class GeneralNode<T> {
 
-    private final GeneralNode<T> parentNode;
+    /** Nodes with more children than this also keep their children in a map by key */
+    static final int HASH_THRESHOLD = 32;
+    /** Header and three references */
+    private static final long NODE_BYTES = 24;
+    /** Header, two references, two ints, a long and a boolean, padded to 8 bytes */
+    private static final long BRANCH_BYTES = 40;
+    private static final long HASH_MAP_BYTES = 48;
+    private static final long HASH_MAP_ENTRY_BYTES = 32;
+
+    private GeneralNode<T> parentNode;
     private final T data;
-    private final List<GeneralNode<T>> children = new ArrayList();
+    private Branch<T> branch;
 
     GeneralNode(GeneralNode<T> parentNode, T data) {
         this.parentNode = parentNode;
@@ -22,28 +42,288 @@ final class GeneralNode<T> {
         return parentNode;
     }
 
+    void setParentNode(GeneralNode<T> parentNode) {
+        this.parentNode = parentNode;
+    }
+
     T getData() {
         return data;
     }
 
-    void add(GeneralNode<T> child) {
-        children.add(child);
+    void add(GeneralNode<T> child, Function<? super T, ?> keys) {
+        add(childCount(), child, keys);
+    }
+
+    void add(int index, GeneralNode<T> child, Function<? super T, ?> keys) {
+        int count = childCount();
+        if (index < 0 || index > count) {
+            throw new IndexOutOfBoundsException(format("Index %d is out of range for %d children", index, count));
+        }
+        if (branch == null) {
+            branch = new Branch<>();
+        }
+        Branch<T> b = branch;
+        if (b.children == null || b.childCount == b.children.length) {
+            b.grow();
+        }
+        System.arraycopy(b.children, index, b.children, index + 1, b.childCount - index);
+        b.children[index] = child;
+        b.childCount++;
+        b.addToMap(child, keys);
+    }
+
+    /**
+     * Remove a child. The child is found by scanning the array, and the children after it are shifted down to keep
+     * their order, so this is linear in the number of children even when the child map is used.
+     *
+     * @param child The child
+     * @param keys  The function that returns the key for data
+     * @return The position the child had, or -1 if it is not a child of this node
+     */
+    int remove(GeneralNode<T> child, Function<? super T, ?> keys) {
+        int index = indexOf(child);
+        if (index < 0) {
+            return index;
+        }
+        Branch<T> b = branch;
+        if (b.childCount == 1) {
+            branch = null;
+            return index;
+        }
+        System.arraycopy(b.children, index + 1, b.children, index, b.childCount - index - 1);
+        b.children[--b.childCount] = null;
+        if (b.childMap != null) {
+            Object key = keys.apply(child.data);
+            if (b.childMap.get(key) != child) {
+                b.unmappedChildren--;
+            } else {
+                b.childMap.remove(key);
+                if (b.unmappedChildren > 0) {
+                    // another child with the same key may now be mapped
+                    for (int i = 0; i < b.childCount; ++i) {
+                        GeneralNode<T> other = b.children[i];
+                        if (Objects.equals(key, keys.apply(other.data))) {
+                            b.childMap.put(key, other);
+                            b.unmappedChildren--;
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Find a child by key. Nodes with many children use the child map, others are scanned.
+     *
+     * @param key  The key
+     * @param keys The function that returns the key for data
+     * @return The child, or null if there is none
+     */
+    GeneralNode<T> findChild(Object key, Function<? super T, ?> keys) {
+        if (branch == null) {
+            return null;
+        }
+        if (branch.childMap != null) {
+            return branch.childMap.get(key);
+        }
+        for (int i = 0; i < branch.childCount; ++i) {
+            if (Objects.equals(key, keys.apply(branch.children[i].data))) {
+                return branch.children[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Drop all the children. The child array is replaced rather than cleared, so that traversals already iterating
+     * over the children are not disturbed. The content hash is kept, since the children can be loaded again.
+     */
+    void clearChildren() {
+        if (branch != null) {
+            branch.children = null;
+            branch.childCount = 0;
+            branch.childMap = null;
+            branch.unmappedChildren = 0;
+        }
+    }
+
+    /**
+     * Check if the content hash of this node is known. Leaves do not keep their hash, so this is only ever true for
+     * nodes with children.
+     *
+     * @return Is the hash known?
+     */
+    boolean isHashValid() {
+        return branch != null && branch.hashValid;
+    }
+
+    long getHash() {
+        return branch.hash;
+    }
+
+    /**
+     * Keep the content hash of this node, which must have children.
+     *
+     * @param hash The hash
+     */
+    void setHash(long hash) {
+        branch.hash = hash;
+        branch.hashValid = true;
+    }
+
+    /**
+     * Mark the content hash of this node, and of the nodes above it, as out of date. The nodes above are checked
+     * even if this node's hash was not known, since it may have been a leaf until now.
+     */
+    void invalidateHash() {
+        if (branch != null) {
+            branch.hashValid = false;
+        }
+        for (GeneralNode<T> node = parentNode; node != null && node.isHashValid(); node = node.parentNode) {
+            node.branch.hashValid = false;
+        }
+    }
+
+    private int indexOf(GeneralNode<T> child) {
+        for (int i = 0; i < childCount(); ++i) {
+            if (branch.children[i] == child) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    int childCount() {
+        return branch == null ? 0 : branch.childCount;
     }
 
-    void remove(GeneralNode<T> child) {
-        children.remove(child);
+    GeneralNode<T> getChild(int index) {
+        int count = childCount();
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException(format("Index %d is out of range for %d children", index, count));
+        }
+        return branch.children[index];
     }
 
-    static <T> GeneralNode<T> changeParent(GeneralNode<T> parentNode, GeneralNode<T> node) {
-        GeneralNode<T> newNode = new GeneralNode<>(parentNode, node.data);
-        for (GeneralNode<T> childNode : node.children) {
-            newNode.add(changeParent(newNode, childNode));
+    /**
+     * Check if this node is the given node or one of its descendants.
+     *
+     * @param ancestor The possible ancestor
+     * @return Is this node in the subtree of the ancestor?
+     */
+    boolean isInSubtreeOf(GeneralNode<T> ancestor) {
+        for (GeneralNode<T> node = this; node != null; node = node.parentNode) {
+            if (node == ancestor) {
+                return true;
+            }
         }
-        return newNode;
+        return false;
     }
 
+    /**
+     * Return the children as a list. The list shares the child array of the node rather than copying it, so it must
+     * not be kept across an add or remove of a child. It does stay valid when the children are dropped with
+     * clearChildren(), which replaces the array instead of clearing it. Traversals keep these lists while they run,
+     * so the tree must not be changed during a traversal.
+     *
+     * @return The children
+     */
     List<GeneralNode<T>> getChildren() {
-        return children;
+        int count = childCount();
+        return count == 0 ? Collections.emptyList() : new ChildList<>(branch.children, count);
+    }
+
+    /**
+     * Estimate the heap retained by this node, excluding its data and its children, assuming a 64-bit JVM with
+     * compressed object pointers: 12 byte object headers, 4 byte references and 8 byte alignment.
+     *
+     * @return The estimated number of bytes
+     */
+    long estimateBytes() {
+        long bytes = NODE_BYTES;
+        if (branch == null) {
+            return bytes;
+        }
+        bytes += BRANCH_BYTES;
+        if (branch.children != null) {
+            bytes += align(16 + 4L * branch.children.length);
+        }
+        Map<Object, GeneralNode<T>> childMap = branch.childMap;
+        if (childMap != null) {
+            int table = Integer.highestOneBit(Math.max(1, (int) (childMap.size() / 0.75f)) * 2 - 1);
+            bytes += HASH_MAP_BYTES + align(16 + 4L * Math.max(16, table)) + HASH_MAP_ENTRY_BYTES * childMap.size();
+        }
+        return bytes;
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    /** The children of a node that has them, with the child map and content hash that only such nodes need */
+    private static final class Branch<T> {
+
+        private GeneralNode<T>[] children;
+        private int childCount;
+        private Map<Object, GeneralNode<T>> childMap;
+        private int unmappedChildren;
+        private long hash;
+        private boolean hashValid;
+
+        /**
+         * Make room for one more child. The array starts with a single slot, since many nodes only ever have one
+         * child, and grows by half after that.
+         */
+        @SuppressWarnings("unchecked")
+        private void grow() {
+            if (children == null) {
+                children = new GeneralNode[1];
+            } else {
+                children = Arrays.copyOf(children, children.length + (children.length >> 1) + 1);
+            }
+        }
+
+        private void addToMap(GeneralNode<T> child, Function<? super T, ?> keys) {
+            if (childMap != null) {
+                if (childMap.putIfAbsent(keys.apply(child.data), child) != null) {
+                    unmappedChildren++;
+                }
+            } else if (childCount > HASH_THRESHOLD) {
+                childMap = new HashMap<>();
+                for (int i = 0; i < childCount; ++i) {
+                    if (childMap.putIfAbsent(keys.apply(children[i].data), children[i]) != null) {
+                        unmappedChildren++;
+                    }
+                }
+            }
+        }
+    }
+
+    /** A read-only list over the first entries of a child array */
+    private static final class ChildList<T> extends AbstractList<GeneralNode<T>> implements RandomAccess {
+
+        private final GeneralNode<T>[] children;
+        private final int size;
+
+        private ChildList(GeneralNode<T>[] children, int size) {
+            this.children = children;
+            this.size = size;
+        }
+
+        @Override
+        public GeneralNode<T> get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException(format("Index %d is out of range for %d children", index, size));
+            }
+            return children[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
     }
 
 }
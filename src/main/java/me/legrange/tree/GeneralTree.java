@@ -1,22 +1,36 @@
 package me.legrange.tree;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static java.lang.String.format;
-import static me.legrange.tree.GeneralNode.changeParent;
 
 /**
  * A simple tree class that hides the tree implementation. The user works only with the Tree object
- * and with their data. Since the tree relies on hashCode() and equals() internally, for best results
- * it should be used by objects that implement those properly.
+ * and with their data. By default the tree relies on hashCode() and equals() internally, so for best results
+ * it should be used by objects that implement those properly. Data with expensive or missing implementations can
+ * be compared with another equivalence instead, given when the tree is created.
  *
  * @param <T> The type of data stored in the tree
  */
 public final class GeneralTree<T> implements Tree<T> {
 
     private final GeneralNode<T> root;
+    private final NodeCache<T> cache;
+    private final Equivalence<? super T> equivalence;
+    private final Function<? super T, ?> keyFunction;
+    private final Function<Object, ?> pathKeyFunction;
+    private final ChangePublisher<T> publisher = new ChangePublisher<>();
+    private final TreeStructure<GeneralNode<T>, T> structure = new Structure();
 
     /**
      * Create a new tree with the given data at the root.
@@ -24,27 +38,151 @@ public final class GeneralTree<T> implements Tree<T> {
      * @param rootData The data for the root
      */
     public GeneralTree(T rootData) {
+        this(rootData, Equivalence.equality());
+    }
+
+    /**
+     * Create a new tree with the given data at the root, in which data is also found by key. Keys are used by
+     * resolvePath(), and nodes with many children keep their children in a map by key, so that finding a child does
+     * not depend on the number of children. Without a key function, data is its own key.
+     *
+     * @param rootData    The data for the root
+     * @param keyFunction The function that returns the key for data
+     */
+    public GeneralTree(T rootData, Function<? super T, ?> keyFunction) {
+        this(rootData, Equivalence.equality(), keyFunction);
+    }
+
+    /**
+     * Create a new tree with the given data at the root, in which data is compared with the given equivalence
+     * rather than with equals() and hashCode(). Data is its own key, compared with the same equivalence.
+     *
+     * @param rootData    The data for the root
+     * @param equivalence The equivalence that decides when data is the same
+     */
+    public GeneralTree(T rootData, Equivalence<? super T> equivalence) {
+        this(rootData, equivalence, equivalence::wrap, dataKeys(equivalence), null, 0);
+    }
+
+    /**
+     * Create a new tree with the given data at the root, in which data is compared with the given equivalence, and
+     * is also found by key. Key lookups use the keys' own equals() and hashCode(), so for data that is expensive to
+     * compare, a cheap key is best.
+     *
+     * @param rootData    The data for the root
+     * @param equivalence The equivalence that decides when data is the same
+     * @param keyFunction The function that returns the key for data
+     */
+    public GeneralTree(T rootData, Equivalence<? super T> equivalence, Function<? super T, ?> keyFunction) {
+        this(rootData, equivalence, keyFunction, Function.identity(), null, 0);
+    }
+
+    /**
+     * Create a new tree with the given data at the root, of which the rest of the data is loaded on demand. The
+     * children of a node are loaded with the child loader the first time they are needed, and kept until the tree
+     * holds more than the given number of nodes. The children of the least recently used nodes are then dropped,
+     * to be loaded again if they are needed later.
+     * <p>
+     * A tree created this way cannot be changed. Operations that need the whole tree, like contains() or
+     * getDepth(), load it node by node.
+     *
+     * @param rootData    The data for the root
+     * @param childLoader The function that returns the child data for parent data
+     * @param maxNodes    The maximum number of nodes to keep in memory
+     */
+    public GeneralTree(T rootData, Function<? super T, ? extends Collection<? extends T>> childLoader, int maxNodes) {
+        this(rootData, Equivalence.equality(), childLoader, maxNodes);
+    }
+
+    /**
+     * Create a new tree with the given data at the root, in which data is compared with the given equivalence, and
+     * of which the rest of the data is loaded on demand. See the other constructors for details.
+     *
+     * @param rootData    The data for the root
+     * @param equivalence The equivalence that decides when data is the same
+     * @param childLoader The function that returns the child data for parent data
+     * @param maxNodes    The maximum number of nodes to keep in memory
+     */
+    public GeneralTree(T rootData, Equivalence<? super T> equivalence,
+                       Function<? super T, ? extends Collection<? extends T>> childLoader, int maxNodes) {
+        this(rootData, equivalence, equivalence::wrap, dataKeys(equivalence), childLoader, maxNodes);
+    }
+
+    /**
+     * Create a new tree with the given data at the root, in which data is also found by key, and of which the rest
+     * of the data is loaded on demand. See the other constructors for details.
+     *
+     * @param rootData    The data for the root
+     * @param keyFunction The function that returns the key for data
+     * @param childLoader The function that returns the child data for parent data
+     * @param maxNodes    The maximum number of nodes to keep in memory
+     */
+    public GeneralTree(T rootData, Function<? super T, ?> keyFunction,
+                       Function<? super T, ? extends Collection<? extends T>> childLoader, int maxNodes) {
+        this(rootData, Equivalence.equality(), keyFunction, Function.identity(), childLoader, maxNodes);
+    }
+
+    /**
+     * Create a new tree.
+     *
+     * @param rootData        The data for the root
+     * @param equivalence     The equivalence that decides when data is the same
+     * @param keyFunction     The function that returns the key for data
+     * @param pathKeyFunction The function that turns the elements of a path into keys
+     * @param childLoader     The function that returns the child data for parent data, or null if the tree is not
+     *                        loaded on demand
+     * @param maxNodes        The maximum number of nodes to keep in memory, if the tree is loaded on demand
+     */
+    private GeneralTree(T rootData, Equivalence<? super T> equivalence, Function<? super T, ?> keyFunction,
+                        Function<Object, ?> pathKeyFunction,
+                        Function<? super T, ? extends Collection<? extends T>> childLoader, int maxNodes) {
         this.root = new GeneralNode(null, rootData);
+        this.equivalence = equivalence;
+        this.keyFunction = keyFunction;
+        this.pathKeyFunction = pathKeyFunction;
+        this.cache = childLoader == null ? null : new NodeCache<>(childLoader, keyFunction, maxNodes);
+    }
+
+    /**
+     * Return the function that turns the elements of a path into keys, for a tree in which data is its own key.
+     *
+     * @param equivalence The equivalence that decides when data is the same
+     * @param <T>         The type of data stored in the tree
+     * @return The function
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> Function<Object, ?> dataKeys(Equivalence<? super T> equivalence) {
+        return element -> equivalence.wrap((T) element);
     }
 
     @Override
     public boolean contains(T object) {
-        return preOrderDepthStream().anyMatch(data -> data.equals(object));
+        return preOrderDepthStream().anyMatch(data -> equivalence.equivalent(data, object));
     }
 
     @Override
     public Stream<T> preOrderDepthStream() {
-        return makePreOrderDepthStream(root).map(node -> node.getData());
+        return TreeIterators.preOrderNodes(structure).map(node -> node.getData());
     }
 
     @Override
     public Stream<T> postOrderDepthStream() {
-        return makePostOrderDepthStream(root).map(node -> node.getData());
+        return TreeIterators.postOrderNodes(structure).map(node -> node.getData());
     }
 
     @Override
     public Stream<T> breadthStream() {
-        return makeBreadthStream(Collections.singletonList(root)).map(node -> node.getData());
+        return breadthStream(Integer.MAX_VALUE);
+    }
+
+    @Override
+    public Stream<T> preOrderDepthStream(int maxDepth) {
+        return TreeIterators.preOrder(structure, maxDepth).map(Leveled::getData);
+    }
+
+    @Override
+    public Stream<Leveled<T>> leveledBreadthStream(int maxDepth) {
+        return TreeIterators.breadth(structure, maxDepth);
     }
 
     @Override
@@ -59,12 +197,61 @@ public final class GeneralTree<T> implements Tree<T> {
 
     @Override
     public int getDepth() {
-        return calculateDepth(root);
+        return TreeIterators.depth(structure);
     }
 
     @Override
     public int getWidth() {
-        return calculateWidth(root);
+        return TreeIterators.width(structure);
+    }
+
+    @Override
+    public void walk(TreeVisitor<? super T> visitor) {
+        TreeWalker.walk(structure, visitor);
+    }
+
+    @Override
+    public <R> R fold(Function<? super T, ? extends R> leafFunction, BiFunction<? super T, List<R>, ? extends R> combineFunction) {
+        return ForkJoinPool.commonPool().invoke(new FoldTask<>(structure, leafFunction, combineFunction, null, root));
+    }
+
+    @Override
+    public <R> Map<T, R> aggregate(Function<? super T, ? extends R> leafFunction, BiFunction<? super T, List<R>, ? extends R> combineFunction) {
+        Map<T, R> results = new ConcurrentHashMap<>();
+        ForkJoinPool.commonPool().invoke(new FoldTask<>(structure, leafFunction, combineFunction, results, root));
+        return results;
+    }
+
+    /**
+     * Call an asynchronous function for every node in the tree, with at most a given number of calls in flight. The
+     * call for a node completes before the calls for its children are started. The function is called on the thread
+     * that completed an earlier call, so it should not block.
+     *
+     * @param function    The function to call for each node's data. It must not return null, or complete with null.
+     * @param maxInFlight The maximum number of calls that have not completed yet
+     * @param <R>         The type of the results
+     * @return A future that completes with the result for every node, or with the first failure
+     */
+    public <R> CompletableFuture<Map<T, R>> walkAsync(Function<? super T, ? extends CompletionStage<? extends R>> function, int maxInFlight) {
+        return walkAsync(function, maxInFlight, true, Runnable::run);
+    }
+
+    /**
+     * Call an asynchronous function for every node in the tree, with at most a given number of calls in flight. If
+     * the function does blocking work before returning its stage, pass an executor that can run many blocking calls,
+     * for example a virtual thread per task executor on Java 21. The tree must not be changed during the walk.
+     *
+     * @param function    The function to call for each node's data. It must not return null, or complete with null.
+     * @param maxInFlight The maximum number of calls that have not completed yet
+     * @param parentFirst Must the call for a node complete before the calls for its children are started? If not,
+     *                    calls are started in breadth first order as soon as there is room.
+     * @param executor    The executor on which the function is called
+     * @param <R>         The type of the results
+     * @return A future that completes with the result for every node, or with the first failure
+     */
+    public <R> CompletableFuture<Map<T, R>> walkAsync(Function<? super T, ? extends CompletionStage<? extends R>> function, int maxInFlight,
+                                                   boolean parentFirst, Executor executor) {
+        return new AsyncWalker<>(structure, function, maxInFlight, parentFirst, executor).start();
     }
 
     /**
@@ -73,7 +260,10 @@ public final class GeneralTree<T> implements Tree<T> {
      * @param child The child data
      */
     public void add(T child) {
-        root.add(new GeneralNode(root, child));
+        checkChangeable();
+        GeneralNode<T> node = new GeneralNode<>(root, child);
+        attach(root, node);
+        commit(TreeChange.Type.ADDED, child, root.getData(), null, () -> detach(node));
     }
 
     /**
@@ -83,8 +273,22 @@ public final class GeneralTree<T> implements Tree<T> {
      * @param child  The child data
      */
     public void add(T parent, T child) {
+        checkChangeable();
         GeneralNode<T> parentNode = getNode(parent);
-        parentNode.add(new GeneralNode(parentNode, child));
+        GeneralNode<T> node = new GeneralNode<>(parentNode, child);
+        attach(parentNode, node);
+        commit(TreeChange.Type.ADDED, child, parentNode.getData(), null, () -> detach(node));
+    }
+
+    /**
+     * Add all the given children to a specific parent. The children are added as a single batch, see
+     * {@link Batch} for the validation applied.
+     *
+     * @param parent   The parent data
+     * @param children The child data
+     */
+    public void addAll(T parent, Collection<? extends T> children) {
+        batch().addAll(parent, children).apply();
     }
 
     /**
@@ -94,11 +298,46 @@ public final class GeneralTree<T> implements Tree<T> {
      * @param child  The new child data
      */
     public void move(T parent, T child) {
+        checkChangeable();
         GeneralNode<T> childNode = getNode(child);
-        GeneralNode<T> currentParentNode = childNode.getParentNode();
-        currentParentNode.remove(childNode);
         GeneralNode<T> newParentNode = getNode(parent);
-        newParentNode.add(changeParent(newParentNode, childNode));
+        checkMove(newParentNode, childNode);
+        GeneralNode<T> oldParentNode = childNode.getParentNode();
+        int oldPosition = detach(childNode);
+        attach(newParentNode, childNode);
+        commit(TreeChange.Type.MOVED, childNode.getData(), newParentNode.getData(), oldParentNode.getData(), () -> {
+            detach(childNode);
+            attach(oldParentNode, oldPosition, childNode);
+        });
+    }
+
+    /**
+     * Remove data, and all the data below it, from the tree.
+     *
+     * @param child The data to remove
+     */
+    public void remove(T child) {
+        checkChangeable();
+        GeneralNode<T> childNode = getNode(child);
+        checkNotRoot(childNode);
+        GeneralNode<T> oldParentNode = childNode.getParentNode();
+        int oldPosition = detach(childNode);
+        commit(TreeChange.Type.REMOVED, childNode.getData(), null, oldParentNode.getData(),
+                () -> attach(oldParentNode, oldPosition, childNode));
+    }
+
+    @Override
+    public ChangeSubscription subscribe(ChangeSubscriber<T> subscriber, int maxBuffered) {
+        return publisher.subscribe(subscriber, maxBuffered);
+    }
+
+    /**
+     * Start a new batch of changes to the tree.
+     *
+     * @return The batch
+     */
+    public Batch batch() {
+        return new Batch();
     }
 
     /**
@@ -108,75 +347,768 @@ public final class GeneralTree<T> implements Tree<T> {
      * @return The child data
      */
     public List<T> getChildren(T parent) {
-        return getNode(parent).getChildren().stream()
+        return childrenOf(getNode(parent)).stream()
                 .map(node -> node.getData()).collect(Collectors.toList());
     }
 
     /**
-     * Convenience method to find the node for an object
+     * Return a hash of the content of the tree: its data, hashed with the equivalence of the tree, and how it is
+     * arranged. The hash is kept for every node, and after a change only the hashes on the path from the changed
+     * node to the root are worked out again.
+     *
+     * @return The hash
+     */
+    public long contentHash() {
+        return hashOf(root);
+    }
+
+    /**
+     * Check if another tree has the same content as this one, by comparing their content hashes. Trees that differ
+     * have the same 64-bit hash only by extreme coincidence.
+     *
+     * @param other The other tree
+     * @return Do they have the same content?
+     */
+    public boolean contentEquals(GeneralTree<T> other) {
+        return contentHash() == other.contentHash();
+    }
+
+    /**
+     * Find the differences between this tree and another tree. Only subtrees of which the content hashes differ
+     * are compared, so the time taken depends on the size of the change rather than on the size of the trees.
+     * Children are matched by their data, compared with the equivalence of this tree, and data that moved is
+     * reported as removed from its old parent and added to its new parent.
+     *
+     * @param other The other tree
+     * @return The changes that turn this tree into the other tree
+     */
+    public List<Difference<T>> diff(GeneralTree<T> other) {
+        List<Difference<T>> differences = new ArrayList<>();
+        if (!equivalence.equivalent(root.getData(), other.root.getData())) {
+            differences.add(new Difference<>(Difference.Type.REMOVED, root.getData(), null));
+            differences.add(new Difference<>(Difference.Type.ADDED, other.root.getData(), null));
+            return differences;
+        }
+        Deque<GeneralNode<T>> mine = new ArrayDeque<>();
+        Deque<GeneralNode<T>> theirs = new ArrayDeque<>();
+        mine.push(root);
+        theirs.push(other.root);
+        while (!mine.isEmpty()) {
+            GeneralNode<T> node = mine.pop();
+            GeneralNode<T> otherNode = theirs.pop();
+            if (hashOf(node) == other.hashOf(otherNode)) {
+                continue;
+            }
+            T data = node.getData();
+            Map<Object, GeneralNode<T>> otherChildren = new LinkedHashMap<>();
+            for (GeneralNode<T> otherChild : other.childrenOf(otherNode)) {
+                otherChildren.putIfAbsent(equivalence.wrap(otherChild.getData()), otherChild);
+            }
+            List<Object> kept = new ArrayList<>();
+            for (GeneralNode<T> child : childrenOf(node)) {
+                Object key = equivalence.wrap(child.getData());
+                GeneralNode<T> otherChild = otherChildren.remove(key);
+                if (otherChild == null) {
+                    differences.add(new Difference<>(Difference.Type.REMOVED, child.getData(), data));
+                } else {
+                    kept.add(key);
+                    mine.push(child);
+                    theirs.push(otherChild);
+                }
+            }
+            for (GeneralNode<T> added : otherChildren.values()) {
+                differences.add(new Difference<>(Difference.Type.ADDED, added.getData(), data));
+            }
+            List<Object> otherKept = new ArrayList<>(kept.size());
+            for (GeneralNode<T> otherChild : other.childrenOf(otherNode)) {
+                Object key = equivalence.wrap(otherChild.getData());
+                if (!otherChildren.containsKey(key)) {
+                    otherKept.add(key);
+                }
+            }
+            if (!kept.equals(otherKept)) {
+                differences.add(new Difference<>(Difference.Type.REORDERED, data, node == root ? null : node.getParentNode().getData()));
+            }
+        }
+        return differences;
+    }
+
+    /**
+     * Find data by the keys on the path to it from the root. The root itself is not part of the path, so an empty
+     * path resolves to the root. Each step looks up one child by key, so the time taken depends on the length of
+     * the path and not on the size of the tree.
+     *
+     * @param path The keys on the path, starting below the root
+     * @return The data, if there is data at the path
+     */
+    public Optional<T> resolvePath(List<?> path) {
+        GeneralNode<T> node = root;
+        for (Object key : path) {
+            node = loaded(node).findChild(pathKeyFunction.apply(key), keyFunction);
+            if (node == null) {
+                return Optional.empty();
+            }
+        }
+        return Optional.of(node.getData());
+    }
+
+    /**
+     * Get a read-only view of the child data for specific parent data. The view is not a copy, and reflects later
+     * changes to the children of the parent.
+     *
+     * @param parent The parent data
+     * @return The child data
+     */
+    public List<T> childrenView(T parent) {
+        return new ChildrenView(getNode(parent));
+    }
+
+    /**
+     * Get the number of children of specific parent data.
+     *
+     * @param parent The parent data
+     * @return The number of children
+     */
+    public int childCount(T parent) {
+        return loaded(getNode(parent)).childCount();
+    }
+
+    /**
+     * Check if data has no children.
+     *
+     * @param parent The parent data
+     * @return Is it a leaf?
+     */
+    public boolean isLeaf(T parent) {
+        return loaded(getNode(parent)).childCount() == 0;
+    }
+
+    /**
+     * Perform an action for each of the children of specific parent data, in order.
+     *
+     * @param parent The parent data
+     * @param action The action to perform
+     */
+    public void forEachChild(T parent, Consumer<? super T> action) {
+        GeneralNode<T> node = loaded(getNode(parent));
+        for (int i = 0; i < node.childCount(); ++i) {
+            action.accept(node.getChild(i).getData());
+        }
+    }
+
+    /**
+     * Gather the number of nodes, the fan-out distribution and the estimated memory use of the tree. For a tree that
+     * is loaded on demand, only the nodes currently in memory are counted, and none are loaded.
+     *
+     * @return The statistics
+     */
+    public TreeStatistics statistics() {
+        long nodes = 0;
+        long leaves = 0;
+        long bytes = 0;
+        SortedMap<Integer, Long> fanOuts = new TreeMap<>();
+        Deque<GeneralNode<T>> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            GeneralNode<T> node = stack.pop();
+            int count = node.childCount();
+            nodes++;
+            if (count == 0) {
+                leaves++;
+            }
+            fanOuts.merge(count, 1L, Long::sum);
+            bytes += node.estimateBytes();
+            for (int i = 0; i < count; ++i) {
+                stack.push(node.getChild(i));
+            }
+        }
+        return new TreeStatistics(nodes, leaves, fanOuts, bytes);
+    }
+
+    /**
+     * Return the structure of the tree, for use by code in this package that works with nodes directly.
+     *
+     * @return The structure
+     */
+    TreeStructure<GeneralNode<T>, T> structure() {
+        return structure;
+    }
+
+    /**
+     * Add a new node for data below a parent node, without looking up the parent or publishing the change. This is
+     * used to build trees quickly from a trusted source.
+     *
+     * @param parentNode The parent node
+     * @param child      The child data
+     * @return The new node
+     */
+    GeneralNode<T> addNode(GeneralNode<T> parentNode, T child) {
+        GeneralNode<T> node = new GeneralNode<>(parentNode, child);
+        attach(parentNode, node);
+        return node;
+    }
+
+    /**
+     * Start replaying changes that were recorded for this tree.
+     *
+     * @return The replay
+     */
+    Replay replay() {
+        return new Replay();
+    }
+
+    /**
+     * Convenience method to find the node for an object. The search is done in pre-order, without building a
+     * stream.
      *
      * @param object The data
      * @return The node
      */
     private GeneralNode<T> getNode(T object) {
-        Optional<GeneralNode<T>> first = makePreOrderDepthStream(root)
-                .filter(node -> node.getData().equals(object))
-                .findFirst();
-        if (first.isPresent()) {
-            return first.get();
+        Deque<GeneralNode<T>> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            GeneralNode<T> node = stack.pop();
+            if (equivalence.equivalent(node.getData(), object)) {
+                return node;
+            }
+            for (int i = loaded(node).childCount() - 1; i >= 0; --i) {
+                stack.push(node.getChild(i));
+            }
         }
         throw new NoSuchElementException(format("No data found for object '%s'", object));
     }
 
     /**
-     * Recursively set up a pre-order depth first stream.
+     * Find the nodes for data with one pass over the tree. The keys are data wrapped with the equivalence of the
+     * tree. If data appears more than once, the first node found in pre-order wins, like with getNode().
+     *
+     * @param keys The keys of the data to find
+     * @return The nodes found, by key
+     */
+    private Map<Object, GeneralNode<T>> findNodes(Set<Object> keys) {
+        return TreeIterators.find(structure, equivalence::wrap, keys);
+    }
+
+    /**
+     * Return the content hash for a node, working out the hashes that are out of date in its subtree first.
+     *
+     * @param node The node
+     * @return The hash
+     */
+    private long hashOf(GeneralNode<T> node) {
+        if (node.isHashValid()) {
+            return node.getHash();
+        }
+        Deque<GeneralNode<T>> stack = new ArrayDeque<>();
+        Deque<Integer> positions = new ArrayDeque<>();
+        stack.push(node);
+        positions.push(0);
+        while (!stack.isEmpty()) {
+            GeneralNode<T> top = stack.peek();
+            int count = loaded(top).childCount();
+            int position = positions.pop();
+            while (position < count && top.getChild(position).isHashValid()) {
+                position++;
+            }
+            if (position < count) {
+                positions.push(position + 1);
+                stack.push(top.getChild(position));
+                positions.push(0);
+                continue;
+            }
+            stack.pop();
+            if (count > 0 && !top.isHashValid()) {
+                long hash = mix(equivalence.hash(top.getData()));
+                for (int i = 0; i < count; ++i) {
+                    hash = hash * 0x100000001B3L + knownHash(top.getChild(i));
+                }
+                top.setHash(mix(hash ^ count));
+            }
+        }
+        return knownHash(node);
+    }
+
+    /**
+     * Return the hash of a node of which the subtree hashes are up to date. Leaves do not keep their hash, so it is
+     * worked out each time.
+     *
+     * @param node The node
+     * @return The hash
+     */
+    private long knownHash(GeneralNode<T> node) {
+        return node.isHashValid() ? node.getHash() : mix(mix(equivalence.hash(node.getData())));
+    }
+
+    /**
+     * Spread the bits of a hash, using the finalisation step of MurmurHash3.
+     *
+     * @param hash The hash
+     * @return The mixed hash
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private void attach(GeneralNode<T> parentNode, GeneralNode<T> node) {
+        attach(parentNode, -1, node);
+    }
+
+    /**
+     * Link a node to a new parent.
+     *
+     * @param parentNode The parent node
+     * @param position   The position among the children of the parent, or -1 to add it last
+     * @param node       The node
+     */
+    private void attach(GeneralNode<T> parentNode, int position, GeneralNode<T> node) {
+        node.setParentNode(parentNode);
+        if (position < 0) {
+            parentNode.add(node, keyFunction);
+        } else {
+            parentNode.add(position, node, keyFunction);
+        }
+        parentNode.invalidateHash();
+    }
+
+    /**
+     * Unlink a node from its parent.
+     *
+     * @param node The node
+     * @return The position the node had among the children of its parent
+     */
+    private int detach(GeneralNode<T> node) {
+        GeneralNode<T> parentNode = node.getParentNode();
+        int position = parentNode.remove(node, keyFunction);
+        parentNode.invalidateHash();
+        node.setParentNode(null);
+        return position;
+    }
+
+    /**
+     * Record and publish a single change that has been made. If it cannot be recorded, it is undone.
+     *
+     * @param type      The type of change
+     * @param data      The data changed
+     * @param parent    The new parent
+     * @param oldParent The old parent
+     * @param undo      Undoes the change
+     */
+    private void commit(TreeChange.Type type, T data, T parent, T oldParent, Runnable undo) {
+        if (!publisher.isActive()) {
+            return;
+        }
+        TreeChange<T> change = new TreeChange<>(type, data, parent, oldParent);
+        record(Collections.singletonList(change), undo);
+        publisher.publish(change);
+        publisher.flush();
+    }
+
+    /**
+     * Pass changes that have been made to the recorders, undoing them if that fails.
+     *
+     * @param changes The changes
+     * @param undo    Undoes the changes
+     */
+    private void record(List<TreeChange<T>> changes, Runnable undo) {
+        try {
+            publisher.record(changes);
+        } catch (RuntimeException ex) {
+            undo.run();
+            throw ex;
+        }
+    }
+
+    /**
+     * Start passing every change made to the tree to a recorder, in the thread that makes it. A change that the
+     * recorder fails is undone, and the failure is thrown to the caller that made it.
      *
-     * @param data The point in the tree to work from
-     * @return The stream
+     * @param recorder The recorder
      */
-    private Stream<GeneralNode<T>> makePreOrderDepthStream(GeneralNode<T> data) {
-        return Stream.concat(Stream.of(data),
-                data.getChildren().stream().flatMap(this::makePreOrderDepthStream));
+    void addRecorder(ChangePublisher.Recorder<T> recorder) {
+        publisher.addRecorder(recorder);
     }
 
     /**
-     * Recursively set up a post-order depth first stream.
+     * Stop passing changes to a recorder.
      *
-     * @param data The point in the tree to work from
-     * @return The stream
+     * @param recorder The recorder
      */
-    private Stream<GeneralNode<T>> makePostOrderDepthStream(GeneralNode<T> data) {
-        return Stream.concat(data.getChildren().stream().flatMap(this::makePostOrderDepthStream), Stream.of(data));
+    void removeRecorder(ChangePublisher.Recorder<T> recorder) {
+        publisher.removeRecorder(recorder);
     }
 
     /**
-     * Recursively set up a breadth first stream.
+     * Get the children of a node, loading them first if the tree is loaded on demand.
      *
-     * @param data The point in the tree to work from
-     * @return The stream
+     * @param node The node
+     * @return The child nodes
+     */
+    private List<GeneralNode<T>> childrenOf(GeneralNode<T> node) {
+        return loaded(node).getChildren();
+    }
+
+    /**
+     * Make sure the children of a node are in memory, if the tree is loaded on demand.
+     *
+     * @param node The node
+     * @return The node
      */
-    private Stream<GeneralNode<T>> makeBreadthStream(List<GeneralNode<T>> data) {
-        if (data.isEmpty()) {
-            return Stream.empty();
+    private GeneralNode<T> loaded(GeneralNode<T> node) {
+        if (cache != null) {
+            cache.load(node);
         }
-        return Stream.concat(data.stream(),
-                makeBreadthStream(data.stream().flatMap(object -> object.getChildren().stream()).collect(Collectors.toList())));
+        return node;
     }
 
-    private int calculateDepth(GeneralNode<T> node) {
-        return 1 + node.getChildren().stream()
-                .map(child -> calculateDepth(child))
-                .max(Comparator.comparingInt(a -> a)).orElse(0);
+    private void checkChangeable() {
+        if (cache != null) {
+            throw new UnsupportedOperationException("A tree that is loaded on demand cannot be changed");
+        }
     }
 
-    private int calculateWidth(GeneralNode<T> node) {
-        if (node.getChildren().isEmpty()) {
-            return 1;
+    private void checkNotRoot(GeneralNode<T> node) {
+        if (node == root) {
+            throw new IllegalArgumentException("The root cannot be moved or removed");
+        }
+    }
+
+    private void checkMove(GeneralNode<T> newParentNode, GeneralNode<T> childNode) {
+        checkNotRoot(childNode);
+        if (newParentNode.isInSubtreeOf(childNode)) {
+            throw new IllegalArgumentException(format("Cannot move '%s' below itself", childNode.getData()));
+        }
+    }
+
+    /**
+     * A set of adds, moves and removes that are applied to the tree together. All the data referenced by the
+     * batch is resolved with a single pass over the tree, instead of one search per change, and only the nodes
+     * referenced are kept while the batch is applied. Changes are applied
+     * in the order they were added to the batch, and may refer to data added earlier in the same batch.
+     * <p>
+     * A batch is all-or-nothing: adding data that is already in the tree, moving data below itself, moving or
+     * removing the root, or referring to data that is not in the tree fails the batch and leaves the tree as it
+     * was before apply() was called.
+     */
+    public final class Batch {
+
+        private final List<Change<T>> changes = new ArrayList<>();
+
+        private Batch() {
+        }
+
+        /**
+         * Add a child to the root of the tree
+         *
+         * @param child The child data
+         * @return The batch
+         */
+        public Batch add(T child) {
+            return add(root.getData(), child);
+        }
+
+        /**
+         * Add a child to a specific parent.
+         *
+         * @param parent The parent data
+         * @param child  The child data
+         * @return The batch
+         */
+        public Batch add(T parent, T child) {
+            changes.add(new Change<>(ChangeType.ADD, parent, child));
+            return this;
+        }
+
+        /**
+         * Add children to a specific parent.
+         *
+         * @param parent   The parent data
+         * @param children The child data
+         * @return The batch
+         */
+        public Batch addAll(T parent, Collection<? extends T> children) {
+            for (T child : children) {
+                add(parent, child);
+            }
+            return this;
+        }
+
+        /**
+         * Move data to a new parent.
+         *
+         * @param parent The new parent data
+         * @param child  The data to move
+         * @return The batch
+         */
+        public Batch move(T parent, T child) {
+            changes.add(new Change<>(ChangeType.MOVE, parent, child));
+            return this;
+        }
+
+        /**
+         * Remove data, and all the data below it.
+         *
+         * @param child The data to remove
+         * @return The batch
+         */
+        public Batch remove(T child) {
+            changes.add(new Change<>(ChangeType.REMOVE, null, child));
+            return this;
+        }
+
+        /**
+         * Apply the changes in the batch to the tree. If any change fails, the changes already made are undone
+         * and the exception is re-thrown. The batch is emptied once it has been applied.
+         */
+        public void apply() {
+            checkChangeable();
+            Set<Object> keys = new HashSet<>();
+            for (Change<T> change : changes) {
+                if (change.parent != null) {
+                    keys.add(equivalence.wrap(change.parent));
+                }
+                keys.add(equivalence.wrap(change.child));
+            }
+            Map<Object, GeneralNode<T>> index = findNodes(keys);
+            Deque<Runnable> undo = new ArrayDeque<>();
+            List<TreeChange<T>> made = new ArrayList<>(changes.size());
+            try {
+                for (Change<T> change : changes) {
+                    switch (change.type) {
+                        case ADD:
+                            undo.push(applyAdd(index, change, made));
+                            break;
+                        case MOVE:
+                            undo.push(applyMove(index, change, made));
+                            break;
+                        case REMOVE:
+                            undo.push(applyRemove(index, change, made));
+                            break;
+                    }
+                }
+            } catch (RuntimeException ex) {
+                undoAll(undo);
+                throw ex;
+            }
+            record(made, () -> undoAll(undo));
+            changes.clear();
+            for (TreeChange<T> change : made) {
+                publisher.publish(change);
+            }
+            publisher.flush();
+        }
+
+        private void undoAll(Deque<Runnable> undo) {
+            while (!undo.isEmpty()) {
+                undo.pop().run();
+            }
+        }
+
+        private Runnable applyAdd(Map<Object, GeneralNode<T>> index, Change<T> change, List<TreeChange<T>> made) {
+            GeneralNode<T> parentNode = resolve(index, change.parent);
+            GeneralNode<T> existing = index.get(equivalence.wrap(change.child));
+            if (existing != null) {
+                throw new IllegalArgumentException(format("Data '%s' is already in the tree", change.child));
+            }
+            GeneralNode<T> node = new GeneralNode<>(parentNode, change.child);
+            attach(parentNode, node);
+            index.put(equivalence.wrap(change.child), node);
+            made.add(new TreeChange<>(TreeChange.Type.ADDED, change.child, parentNode.getData(), null));
+            return () -> detach(node);
+        }
+
+        private Runnable applyMove(Map<Object, GeneralNode<T>> index, Change<T> change, List<TreeChange<T>> made) {
+            GeneralNode<T> node = resolve(index, change.child);
+            GeneralNode<T> newParentNode = resolve(index, change.parent);
+            checkMove(newParentNode, node);
+            GeneralNode<T> oldParentNode = node.getParentNode();
+            int oldPosition = detach(node);
+            attach(newParentNode, node);
+            made.add(new TreeChange<>(TreeChange.Type.MOVED, node.getData(), newParentNode.getData(), oldParentNode.getData()));
+            return () -> {
+                detach(node);
+                attach(oldParentNode, oldPosition, node);
+            };
+        }
+
+        private Runnable applyRemove(Map<Object, GeneralNode<T>> index, Change<T> change, List<TreeChange<T>> made) {
+            GeneralNode<T> node = resolve(index, change.child);
+            checkNotRoot(node);
+            GeneralNode<T> oldParentNode = node.getParentNode();
+            int oldPosition = detach(node);
+            unindex(index, node);
+            made.add(new TreeChange<>(TreeChange.Type.REMOVED, node.getData(), null, oldParentNode.getData()));
+            return () -> attach(oldParentNode, oldPosition, node);
+        }
+
+        /**
+         * Drop the nodes in a removed subtree from the index, so that every node in the index is in the tree.
+         */
+        private void unindex(Map<Object, GeneralNode<T>> index, GeneralNode<T> removed) {
+            if (index.isEmpty()) {
+                return;
+            }
+            Deque<GeneralNode<T>> stack = new ArrayDeque<>();
+            stack.push(removed);
+            while (!stack.isEmpty()) {
+                GeneralNode<T> node = stack.pop();
+                index.remove(equivalence.wrap(node.getData()), node);
+                for (int i = 0; i < node.childCount(); ++i) {
+                    stack.push(node.getChild(i));
+                }
+            }
+        }
+
+        private GeneralNode<T> resolve(Map<Object, GeneralNode<T>> index, T object) {
+            GeneralNode<T> node = index.get(equivalence.wrap(object));
+            if (node == null) {
+                throw new NoSuchElementException(format("No data found for object '%s'", object));
+            }
+            return node;
+        }
+
+    }
+
+    /**
+     * Applies recorded changes one at a time, the way add(), move() and remove() do, without publishing them. Data
+     * is found with an index of the tree that is built once and kept up to date, instead of with a search per change.
+     * Data that appears more than once is still found with a search, so that the first in pre-order is used, as it
+     * was when the change was made.
+     */
+    final class Replay {
+
+        private final Map<Object, GeneralNode<T>> index = new HashMap<>();
+        private final Set<Object> duplicated = new HashSet<>();
+
+        private Replay() {
+            TreeIterators.preOrderNodes(structure).forEach(this::index);
+        }
+
+        /**
+         * Add a child to a specific parent.
+         *
+         * @param parent The parent data
+         * @param child  The child data
+         */
+        void add(T parent, T child) {
+            index(addNode(resolve(parent), child));
+        }
+
+        /**
+         * Move data to a new parent.
+         *
+         * @param parent The new parent data
+         * @param child  The data to move
+         */
+        void move(T parent, T child) {
+            GeneralNode<T> node = resolve(child);
+            GeneralNode<T> newParentNode = resolve(parent);
+            checkMove(newParentNode, node);
+            detach(node);
+            attach(newParentNode, node);
+        }
+
+        /**
+         * Remove data, and all the data below it.
+         *
+         * @param child The data to remove
+         */
+        void remove(T child) {
+            GeneralNode<T> removed = resolve(child);
+            checkNotRoot(removed);
+            detach(removed);
+            Deque<GeneralNode<T>> stack = new ArrayDeque<>();
+            stack.push(removed);
+            while (!stack.isEmpty()) {
+                GeneralNode<T> node = stack.pop();
+                index.remove(equivalence.wrap(node.getData()), node);
+                for (int i = 0; i < node.childCount(); ++i) {
+                    stack.push(node.getChild(i));
+                }
+            }
+        }
+
+        private void index(GeneralNode<T> node) {
+            Object key = equivalence.wrap(node.getData());
+            if (index.putIfAbsent(key, node) != null) {
+                duplicated.add(key);
+            }
+        }
+
+        private GeneralNode<T> resolve(T object) {
+            Object key = equivalence.wrap(object);
+            if (duplicated.contains(key)) {
+                return getNode(object);
+            }
+            GeneralNode<T> node = index.get(key);
+            if (node == null) {
+                throw new NoSuchElementException(format("No data found for object '%s'", object));
+            }
+            return node;
+        }
+
+    }
+
+    private enum ChangeType {
+        ADD, MOVE, REMOVE
+    }
+
+    private static final class Change<T> {
+
+        private final ChangeType type;
+        private final T parent;
+        private final T child;
+
+        private Change(ChangeType type, T parent, T child) {
+            this.type = type;
+            this.parent = parent;
+            this.child = child;
+        }
+    }
+
+    /**
+     * A live, read-only list of the child data of a node.
+     */
+    private final class ChildrenView extends AbstractList<T> implements RandomAccess {
+
+        private final GeneralNode<T> node;
+
+        private ChildrenView(GeneralNode<T> node) {
+            this.node = node;
+        }
+
+        @Override
+        public T get(int index) {
+            return loaded(node).getChild(index).getData();
+        }
+
+        @Override
+        public int size() {
+            return loaded(node).childCount();
+        }
+    }
+
+    private final class Structure implements TreeStructure<GeneralNode<T>, T> {
+
+        @Override
+        public GeneralNode<T> getRoot() {
+            return root;
+        }
+
+        @Override
+        public T getData(GeneralNode<T> node) {
+            return node.getData();
+        }
+
+        @Override
+        public List<GeneralNode<T>> getChildren(GeneralNode<T> node) {
+            return childrenOf(node);
         }
-        return node.getChildren().stream()
-                .map(this::calculateWidth)
-                .mapToInt(a -> a)
-                .sum();
     }
 
 }
@@ -0,0 +1,60 @@
+package me.legrange.tree;
+
+import java.util.Objects;
+
+import static java.lang.String.format;
+
+/** Data from a tree, paired with the level it is on. The root is on level 0, its children on level 1, and so on.
+ *
+ * @param <T> The type of data stored in the tree
+ */
+public final class Leveled<T> {
+
+    private final T data;
+    private final int level;
+
+    Leveled(T data, int level) {
+        this.data = data;
+        this.level = level;
+    }
+
+    /**
+     * Return the data.
+     *
+     * @return The data
+     */
+    public T getData() {
+        return data;
+    }
+
+    /**
+     * Return the level of the data.
+     *
+     * @return The level
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Leveled)) {
+            return false;
+        }
+        Leveled<?> that = (Leveled<?>) o;
+        return level == that.level && Objects.equals(data, that.data);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(data, level);
+    }
+
+    @Override
+    public String toString() {
+        return format("'%s' on level %d", data, level);
+    }
+}
@@ -0,0 +1,89 @@
+package me.legrange.tree;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.function.Function;
+
+/** Loads the children of general tree nodes on demand, and drops the children of the least recently used
+ * nodes to keep the number of nodes in memory within a budget.
+ *
+ * @param <T> The type of the data contained in the nodes.
+ */
+final class NodeCache<T> {
+
+    private final Function<? super T, ? extends Collection<? extends T>> loader;
+    private final Function<? super T, ?> keys;
+    private final int maxNodes;
+    private final LinkedHashMap<GeneralNode<T>, Boolean> loaded = new LinkedHashMap<>(16, 0.75f, true);
+    private int size = 1;
+
+    NodeCache(Function<? super T, ? extends Collection<? extends T>> loader, Function<? super T, ?> keys, int maxNodes) {
+        if (maxNodes < 1) {
+            throw new IllegalArgumentException("The node budget must be at least 1");
+        }
+        this.loader = loader;
+        this.keys = keys;
+        this.maxNodes = maxNodes;
+    }
+
+    /**
+     * Load the children of a node, if they are not in memory yet.
+     *
+     * @param node The node
+     */
+    synchronized void load(GeneralNode<T> node) {
+        if (loaded.get(node) == null) {
+            loadChildren(node);
+        }
+    }
+
+    /**
+     * Return the number of nodes currently in memory.
+     *
+     * @return The number of nodes
+     */
+    synchronized int size() {
+        return size;
+    }
+
+    private void loadChildren(GeneralNode<T> node) {
+        // touch the path to the root so that it is the last to be evicted
+        for (GeneralNode<T> parent = node.getParentNode(); parent != null; parent = parent.getParentNode()) {
+            loaded.get(parent);
+        }
+        for (T child : loader.apply(node.getData())) {
+            node.add(new GeneralNode<>(node, child), keys);
+            size++;
+        }
+        loaded.put(node, Boolean.TRUE);
+        while (size > maxNodes) {
+            GeneralNode<T> eldest = loaded.keySet().iterator().next();
+            if (node.isInSubtreeOf(eldest)) {
+                // only the path to the node being loaded is left
+                return;
+            }
+            evict(eldest);
+        }
+    }
+
+    /**
+     * Drop everything below a node.
+     *
+     * @param node The node
+     */
+    private void evict(GeneralNode<T> node) {
+        Deque<GeneralNode<T>> stack = new ArrayDeque<>(node.getChildren());
+        while (!stack.isEmpty()) {
+            GeneralNode<T> descendant = stack.pop();
+            size--;
+            if (loaded.remove(descendant) != null) {
+                stack.addAll(descendant.getChildren());
+            }
+        }
+        loaded.remove(node);
+        node.clearChildren();
+    }
+
+}
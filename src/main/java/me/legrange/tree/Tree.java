@@ -1,8 +1,21 @@
 package me.legrange.tree;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 import java.util.stream.Stream;
 
+import static java.lang.String.format;
+
 /** A tree for organising data.
  *
  * @param <T> The type of data contained in the tree
@@ -38,6 +51,72 @@ public interface Tree<T> {
      */
     Stream<T> breadthStream();
 
+    /**
+     * Return a stream that does breadth-first traversal of the first levels of the tree. Nodes below those levels
+     * are not visited.
+     *
+     * @param maxDepth The number of levels to traverse, counted like getDepth() does
+     * @return The stream
+     */
+    default Stream<T> breadthStream(int maxDepth) {
+        return leveledBreadthStream(maxDepth).map(Leveled::getData);
+    }
+
+    /**
+     * Return a stream that does pre-order depth-first traversal of the first levels of the tree. Nodes below those
+     * levels are not visited. The default implementation collects the data during a walk().
+     *
+     * @param maxDepth The number of levels to traverse, counted like getDepth() does
+     * @return The stream
+     */
+    default Stream<T> preOrderDepthStream(int maxDepth) {
+        return TreeWalker.preOrder(this, maxDepth).stream().map(Leveled::getData);
+    }
+
+    /**
+     * Return a stream that does breadth-first traversal of the first levels of the tree, with each element paired
+     * with its level. The root is on level 0. The default implementation collects the data during a walk(), and
+     * sorts it by level.
+     *
+     * @param maxDepth The number of levels to traverse, counted like getDepth() does
+     * @return The stream
+     */
+    default Stream<Leveled<T>> leveledBreadthStream(int maxDepth) {
+        return TreeWalker.preOrder(this, maxDepth).stream().sorted(Comparator.comparingInt(Leveled::getLevel));
+    }
+
+    /**
+     * Return a stream of the data on one level of the tree, from left to right. The root is on level 0. Nodes below
+     * the level are not visited.
+     *
+     * @param level The level
+     * @return The stream
+     */
+    default Stream<T> levelStream(int level) {
+        if (level < 0) {
+            throw new IllegalArgumentException(format("Level %d must not be negative", level));
+        }
+        return leveledBreadthStream(level + 1)
+                .filter(leveled -> leveled.getLevel() == level)
+                .map(Leveled::getData);
+    }
+
+    /**
+     * Return the number of elements on each level of the tree, starting with the root.
+     *
+     * @return The counts by level
+     */
+    default List<Integer> levelCounts() {
+        List<Integer> counts = new ArrayList<>();
+        leveledBreadthStream(Integer.MAX_VALUE).forEach(leveled -> {
+            if (leveled.getLevel() == counts.size()) {
+                counts.add(0);
+            }
+            counts.set(leveled.getLevel(), counts.get(leveled.getLevel()) + 1);
+        });
+        return counts;
+    }
+
     /**
      * Return the data at the root of the tree
      *
@@ -67,4 +146,125 @@ public interface Tree<T> {
      */
     Optional<T> getParent(T child);
 
+    /**
+     * Fold the tree bottom-up into a single result. The leaf function is applied to the data of every leaf, and
+     * the combine function to the data of every other node together with the results for its children, in order.
+     * The trees in this library fold subtrees in parallel on the common fork-join pool, so the functions must be safe
+     * to call from multiple threads. The default implementation folds sequentially during a walk().
+     *
+     * @param leafFunction    The function applied to leaves
+     * @param combineFunction The function that combines data with the results for its children
+     * @param <R>             The type of the result
+     * @return The result for the root
+     */
+    default <R> R fold(Function<? super T, ? extends R> leafFunction, BiFunction<? super T, List<R>, ? extends R> combineFunction) {
+        List<R> rootResult = new ArrayList<>(1);
+        Deque<List<R>> open = new ArrayDeque<>();
+        open.push(rootResult);
+        walk(new TreeVisitor<T>() {
+            @Override
+            public VisitResult preVisit(T data) {
+                open.push(new ArrayList<>());
+                return VisitResult.CONTINUE;
+            }
+
+            @Override
+            public VisitResult postVisit(T data) {
+                List<R> childResults = open.pop();
+                open.peek().add(childResults.isEmpty() ? leafFunction.apply(data) : combineFunction.apply(data, childResults));
+                return VisitResult.CONTINUE;
+            }
+        });
+        return rootResult.get(0);
+    }
+
+    /**
+     * Fold the tree bottom-up like fold(), and return the result for every node. The results may not be null.
+     *
+     * @param leafFunction    The function applied to leaves
+     * @param combineFunction The function that combines data with the results for its children
+     * @param <R>             The type of the results
+     * @return The results by data
+     */
+    default <R> Map<T, R> aggregate(Function<? super T, ? extends R> leafFunction, BiFunction<? super T, List<R>, ? extends R> combineFunction) {
+        Map<T, R> results = new HashMap<>();
+        this.<R>fold(data -> {
+            R result = leafFunction.apply(data);
+            results.put(data, result);
+            return result;
+        }, (data, childResults) -> {
+            R result = combineFunction.apply(data, childResults);
+            results.put(data, result);
+            return result;
+        });
+        return results;
+    }
+
+    /**
+     * Subscribe to the changes made to the tree. Changes are buffered for the subscriber, and delivered in batches
+     * within the demand it requested, in the thread that changed the tree or requested more changes. A subscriber
+     * that falls too far behind its demand is dropped and told so through onError().
+     *
+     * @param subscriber The subscriber
+     * @return The subscription
+     */
+    default ChangeSubscription subscribe(ChangeSubscriber<T> subscriber) {
+        return subscribe(subscriber, ChangePublisher.DEFAULT_MAX_BUFFERED);
+    }
+
+    /**
+     * Subscribe to the changes made to the tree, with a specific limit on the number of changes buffered for the
+     * subscriber beyond the demand it requested. The default implementation does not publish changes and fails.
+     *
+     * @param subscriber  The subscriber
+     * @param maxBuffered The maximum number of changes buffered for the subscriber beyond its demand
+     * @return The subscription
+     */
+    default ChangeSubscription subscribe(ChangeSubscriber<T> subscriber, int maxBuffered) {
+        throw new UnsupportedOperationException("This tree does not publish changes");
+    }
+
+    /**
+     * Walk the tree depth-first, calling the visitor before and after the children of each node are visited. The
+     * visitor can skip subtrees and stop the walk, so that a search only visits the nodes it needs.
+     *
+     * The default implementation works out the structure from preOrderDepthStream() and getParent(), which usually
+     * takes time quadratic in the size of the tree, and only works if no data appears in the tree twice.
+     *
+     * @param visitor The visitor
+     */
+    default void walk(TreeVisitor<? super T> visitor) {
+        Deque<T> open = new ArrayDeque<>();
+        Deque<Boolean> skipped = new ArrayDeque<>();
+        Iterator<T> nodes = preOrderDepthStream().iterator();
+        while (nodes.hasNext()) {
+            T data = nodes.next();
+            if (!open.isEmpty()) {
+                T parent = getParent(data).orElse(null);
+                while (!open.isEmpty() && !Objects.equals(open.peek(), parent)) {
+                    T done = open.pop();
+                    if (!skipped.pop() && visitor.postVisit(done) == VisitResult.TERMINATE) {
+                        return;
+                    }
+                }
+            }
+            boolean skip = !skipped.isEmpty() && skipped.peek();
+            if (!skip) {
+                VisitResult result = visitor.preVisit(data);
+                if (result == VisitResult.TERMINATE) {
+                    return;
+                }
+                skip = result == VisitResult.SKIP_SUBTREE;
+            }
+            open.push(data);
+            skipped.push(skip);
+        }
+        while (!open.isEmpty()) {
+            T done = open.pop();
+            if (!skipped.pop() && visitor.postVisit(done) == VisitResult.TERMINATE) {
+                return;
+            }
+        }
+    }
+
 }
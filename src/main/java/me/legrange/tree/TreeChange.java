@@ -0,0 +1,93 @@
+package me.legrange.tree;
+
+import java.util.Objects;
+
+import static java.lang.String.format;
+
+/** A change made to a tree, as delivered to change subscribers.
+ *
+ * @param <T> The type of data stored in the tree
+ */
+public final class TreeChange<T> {
+
+    /** The kind of change */
+    public enum Type {
+        /** Data was added below a parent */
+        ADDED,
+        /** Data, and its subtree, was moved to a new parent */
+        MOVED,
+        /** Data, and its subtree, was removed */
+        REMOVED
+    }
+
+    private final Type type;
+    private final T data;
+    private final T parent;
+    private final T oldParent;
+
+    TreeChange(Type type, T data, T parent, T oldParent) {
+        this.type = type;
+        this.data = data;
+        this.parent = parent;
+        this.oldParent = oldParent;
+    }
+
+    /**
+     * Return the kind of change.
+     *
+     * @return The type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Return the data that was changed.
+     *
+     * @return The data
+     */
+    public T getData() {
+        return data;
+    }
+
+    /**
+     * Return the parent of the data after the change, or null if it was removed.
+     *
+     * @return The parent data
+     */
+    public T getParent() {
+        return parent;
+    }
+
+    /**
+     * Return the parent of the data before the change, or null if it was added.
+     *
+     * @return The old parent data
+     */
+    public T getOldParent() {
+        return oldParent;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TreeChange)) {
+            return false;
+        }
+        TreeChange<?> that = (TreeChange<?>) o;
+        return type == that.type && Objects.equals(data, that.data) && Objects.equals(parent, that.parent)
+                && Objects.equals(oldParent, that.oldParent);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, data, parent, oldParent);
+    }
+
+    @Override
+    public String toString() {
+        return format("%s '%s' from '%s' to '%s'", type, data, oldParent, parent);
+    }
+}
@@ -0,0 +1,325 @@
+package me.legrange.tree;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static java.lang.String.format;
+
+/** Lazy, depth-limited traversals of a tree. Nodes below the depth limit are never touched, and the children of a
+ * node are only fetched once the traversal gets to the node. None of the traversals recurse, so they work on trees
+ * of any depth.
+ */
+final class TreeIterators {
+
+    private TreeIterators() {
+    }
+
+    /**
+     * Return a breadth-first stream of the data in the first levels of a tree.
+     *
+     * @param structure The tree structure
+     * @param maxDepth  The number of levels to include
+     * @param <N>       The type of the nodes
+     * @param <T>       The type of the data
+     * @return The stream
+     */
+    static <N, T> Stream<Leveled<T>> breadth(TreeStructure<N, T> structure, int maxDepth) {
+        return stream(new BreadthIterator<>(structure, checkDepth(maxDepth)));
+    }
+
+    /**
+     * Return a pre-order depth-first stream of the data in the first levels of a tree.
+     *
+     * @param structure The tree structure
+     * @param maxDepth  The number of levels to include
+     * @param <N>       The type of the nodes
+     * @param <T>       The type of the data
+     * @return The stream
+     */
+    static <N, T> Stream<Leveled<T>> preOrder(TreeStructure<N, T> structure, int maxDepth) {
+        return stream(new PreOrderIterator<>(structure, checkDepth(maxDepth)));
+    }
+
+    /**
+     * Return a pre-order depth-first stream of the nodes of a tree.
+     *
+     * @param structure The tree structure
+     * @param <N>       The type of the nodes
+     * @param <T>       The type of the data
+     * @return The stream
+     */
+    static <N, T> Stream<N> preOrderNodes(TreeStructure<N, T> structure) {
+        return stream(new PreOrderNodeIterator<>(structure));
+    }
+
+    /**
+     * Find the nodes that hold the given data with one pre-order pass, which stops as soon as all of it has been
+     * found. Only the nodes asked for are kept. If data appears more than once, the first node found in pre-order
+     * wins.
+     *
+     * @param structure   The tree structure
+     * @param keyFunction The function that returns the key for data
+     * @param keys        The keys of the data to find
+     * @param <N>         The type of the nodes
+     * @param <T>         The type of the data
+     * @return The nodes found, by key
+     */
+    static <N, T> Map<Object, N> find(TreeStructure<N, T> structure, Function<? super T, ?> keyFunction, Set<Object> keys) {
+        Map<Object, N> found = new HashMap<>();
+        Iterator<N> nodes = new PreOrderNodeIterator<>(structure);
+        while (nodes.hasNext() && found.size() < keys.size()) {
+            N node = nodes.next();
+            Object key = keyFunction.apply(structure.getData(node));
+            if (keys.contains(key)) {
+                found.putIfAbsent(key, node);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Return a post-order depth-first stream of the nodes of a tree.
+     *
+     * @param structure The tree structure
+     * @param <N>       The type of the nodes
+     * @param <T>       The type of the data
+     * @return The stream
+     */
+    static <N, T> Stream<N> postOrderNodes(TreeStructure<N, T> structure) {
+        return stream(new PostOrderNodeIterator<>(structure));
+    }
+
+    /**
+     * Work out the depth of a tree, which is the number of levels in it.
+     *
+     * @param structure The tree structure
+     * @param <N>       The type of the nodes
+     * @param <T>       The type of the data
+     * @return The depth
+     */
+    static <N, T> int depth(TreeStructure<N, T> structure) {
+        Deque<N> nodes = new ArrayDeque<>();
+        Deque<Integer> levels = new ArrayDeque<>();
+        nodes.push(structure.getRoot());
+        levels.push(1);
+        int depth = 0;
+        while (!nodes.isEmpty()) {
+            N node = nodes.pop();
+            int level = levels.pop();
+            depth = Math.max(depth, level);
+            for (N child : structure.getChildren(node)) {
+                nodes.push(child);
+                levels.push(level + 1);
+            }
+        }
+        return depth;
+    }
+
+    /**
+     * Work out the width of a tree, which is the number of leaves in it.
+     *
+     * @param structure The tree structure
+     * @param <N>       The type of the nodes
+     * @param <T>       The type of the data
+     * @return The width
+     */
+    static <N, T> int width(TreeStructure<N, T> structure) {
+        Deque<N> nodes = new ArrayDeque<>();
+        nodes.push(structure.getRoot());
+        int width = 0;
+        while (!nodes.isEmpty()) {
+            List<N> children = structure.getChildren(nodes.pop());
+            if (children.isEmpty()) {
+                width++;
+            }
+            for (N child : children) {
+                nodes.push(child);
+            }
+        }
+        return width;
+    }
+
+    /**
+     * Return a sequential, ordered stream over an iterator.
+     *
+     * @param iterator The iterator
+     * @param <T>      The type of the elements
+     * @return The stream
+     */
+    static <T> Stream<T> stream(Iterator<T> iterator) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false);
+    }
+
+    static int checkDepth(int maxDepth) {
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException(format("Depth %d must not be negative", maxDepth));
+        }
+        return maxDepth;
+    }
+
+    private static final class BreadthIterator<N, T> implements Iterator<Leveled<T>> {
+
+        private final TreeStructure<N, T> structure;
+        private final int maxDepth;
+        private final Deque<N> nodes = new ArrayDeque<>();
+        private final Deque<Integer> levels = new ArrayDeque<>();
+
+        private BreadthIterator(TreeStructure<N, T> structure, int maxDepth) {
+            this.structure = structure;
+            this.maxDepth = maxDepth;
+            if (maxDepth > 0) {
+                nodes.add(structure.getRoot());
+                levels.add(0);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !nodes.isEmpty();
+        }
+
+        @Override
+        public Leveled<T> next() {
+            if (nodes.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            N node = nodes.poll();
+            int level = levels.poll();
+            if (level + 1 < maxDepth) {
+                for (N child : structure.getChildren(node)) {
+                    nodes.add(child);
+                    levels.add(level + 1);
+                }
+            }
+            return new Leveled<>(structure.getData(node), level);
+        }
+    }
+
+    private static final class PreOrderIterator<N, T> implements Iterator<Leveled<T>> {
+
+        private final TreeStructure<N, T> structure;
+        private final int maxDepth;
+        private final Deque<N> nodes = new ArrayDeque<>();
+        private final Deque<Integer> levels = new ArrayDeque<>();
+
+        private PreOrderIterator(TreeStructure<N, T> structure, int maxDepth) {
+            this.structure = structure;
+            this.maxDepth = maxDepth;
+            if (maxDepth > 0) {
+                nodes.push(structure.getRoot());
+                levels.push(0);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !nodes.isEmpty();
+        }
+
+        @Override
+        public Leveled<T> next() {
+            if (nodes.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            N node = nodes.pop();
+            int level = levels.pop();
+            if (level + 1 < maxDepth) {
+                List<N> children = structure.getChildren(node);
+                for (int i = children.size() - 1; i >= 0; --i) {
+                    nodes.push(children.get(i));
+                    levels.push(level + 1);
+                }
+            }
+            return new Leveled<>(structure.getData(node), level);
+        }
+    }
+
+    private static final class PreOrderNodeIterator<N, T> implements Iterator<N> {
+
+        private final TreeStructure<N, T> structure;
+        private final Deque<N> nodes = new ArrayDeque<>();
+
+        private PreOrderNodeIterator(TreeStructure<N, T> structure) {
+            this.structure = structure;
+            nodes.push(structure.getRoot());
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !nodes.isEmpty();
+        }
+
+        @Override
+        public N next() {
+            if (nodes.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            N node = nodes.pop();
+            List<N> children = structure.getChildren(node);
+            for (int i = children.size() - 1; i >= 0; --i) {
+                nodes.push(children.get(i));
+            }
+            return node;
+        }
+    }
+
+    /** Returns a node once all of its children have been returned. The stack holds the path to the next node, and
+     * how far along the children of each node on it the traversal is.
+     */
+    private static final class PostOrderNodeIterator<N, T> implements Iterator<N> {
+
+        private final TreeStructure<N, T> structure;
+        private final Deque<N> path = new ArrayDeque<>();
+        private final Deque<Iterator<N>> children = new ArrayDeque<>();
+
+        private PostOrderNodeIterator(TreeStructure<N, T> structure) {
+            this.structure = structure;
+            descend(structure.getRoot());
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !path.isEmpty();
+        }
+
+        @Override
+        public N next() {
+            if (path.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            N node = path.pop();
+            children.pop();
+            if (!children.isEmpty() && children.peek().hasNext()) {
+                descend(children.peek().next());
+            }
+            return node;
+        }
+
+        /**
+         * Go down from a node along first children until reaching a leaf.
+         */
+        private void descend(N node) {
+            while (true) {
+                Iterator<N> below = structure.getChildren(node).iterator();
+                path.push(node);
+                children.push(below);
+                if (!below.hasNext()) {
+                    return;
+                }
+                node = below.next();
+            }
+        }
+    }
+
+}
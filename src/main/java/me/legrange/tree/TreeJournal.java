@@ -0,0 +1,465 @@
+package me.legrange.tree;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+import static java.lang.String.format;
+
+/**
+ * Keeps a general tree durable on disk. Every change made to the tree is appended to a journal file, and the
+ * journal is compacted into a snapshot of the whole tree from time to time. After a restart, recover() loads the
+ * snapshot and replays the journal written since, so recovery time depends on the number of recent changes rather
+ * than on the full history of the tree.
+ * <p>
+ * The journal addresses data the same way the tree API does: recovery replays each change the way add(), move() or
+ * remove() would, so data that appears more than once is found in pre-order, as it was when the change was made.
+ * Changes are written in the thread that changes the tree, before the change returns. Changes made together, like
+ * those in a batch, are written together, and the file is forced to disk once the given number of changes has been
+ * written since the last time. If writing fails, the change is undone and the failure is thrown as an
+ * UncheckedIOException. The journal then stops, so every later change to the tree fails until the journal is closed,
+ * and sync() and close() report the failure. Open a new journal to start again from the tree as it is.
+ *
+ * @param <T> The type of data stored in the tree
+ */
+public final class TreeJournal<T> implements Closeable {
+
+    private static final String SNAPSHOT = "tree.snapshot";
+    private static final String JOURNAL = "tree.journal";
+    private static final int SNAPSHOT_MAGIC = 0x54524545;
+    private static final int MAX_RECORD = 64 * 1024 * 1024;
+    /** Records are collected in memory up to about this many bytes before they are written */
+    private static final int WRITE_CHUNK = 64 * 1024;
+
+    private final GeneralTree<T> tree;
+    private final Path directory;
+    private final Function<? super T, byte[]> encoder;
+    private final int syncInterval;
+    private final int compactInterval;
+    private final FileChannel channel;
+    private final ChangePublisher.Recorder<T> recorder = this::record;
+    private long sequence;
+    private int unsynced;
+    private int journaled;
+    private IOException failure;
+
+    private TreeJournal(GeneralTree<T> tree, Path directory, Function<? super T, byte[]> encoder, int syncInterval,
+                        int compactInterval) throws IOException {
+        if (syncInterval < 1 || compactInterval < 1) {
+            throw new IllegalArgumentException("Sync and compact intervals must be at least 1");
+        }
+        this.tree = tree;
+        this.directory = directory;
+        this.encoder = encoder;
+        this.syncInterval = syncInterval;
+        this.compactInterval = compactInterval;
+        Files.createDirectories(directory);
+        this.channel = FileChannel.open(directory.resolve(JOURNAL), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.READ);
+    }
+
+    /**
+     * Start journaling the changes to a tree. Any journal already in the directory is replaced, starting with a
+     * snapshot of the tree as it is now.
+     *
+     * @param tree            The tree
+     * @param directory       The directory for the snapshot and journal files
+     * @param encoder         The function that turns data into bytes
+     * @param syncInterval    The number of changes after which the journal is forced to disk
+     * @param compactInterval The number of changes after which the journal is compacted into a new snapshot
+     * @param <T>             The type of data stored in the tree
+     * @return The journal
+     * @throws IOException Thrown if the files cannot be written
+     */
+    public static <T> TreeJournal<T> open(GeneralTree<T> tree, Path directory, Function<? super T, byte[]> encoder,
+                                          int syncInterval, int compactInterval) throws IOException {
+        TreeJournal<T> journal = new TreeJournal<>(tree, directory, encoder, syncInterval, compactInterval);
+        try {
+            journal.sequence = readLastSequence(directory);
+            journal.compact();
+        } catch (IOException ex) {
+            journal.channel.close();
+            throw ex;
+        }
+        tree.addRecorder(journal.recorder);
+        return journal;
+    }
+
+    /**
+     * Recover a tree from the snapshot and journal in a directory. A change that was only partly written when the
+     * process stopped is ignored. Each change in the journal is replayed with the tree operation that matches it,
+     * finding data with an index of the tree that is built once.
+     *
+     * @param directory The directory for the snapshot and journal files
+     * @param decoder   The function that turns bytes into data
+     * @param <T>       The type of data stored in the tree
+     * @return The tree
+     * @throws IOException Thrown if the files cannot be read
+     */
+    public static <T> GeneralTree<T> recover(Path directory, Function<byte[], ? extends T> decoder) throws IOException {
+        return recover(directory, decoder, Equivalence.equality());
+    }
+
+    /**
+     * Recover a tree in which data is compared with the given equivalence. This must be the equivalence of the tree
+     * that was journaled, so that changes are replayed on the same data.
+     *
+     * @param directory   The directory for the snapshot and journal files
+     * @param decoder     The function that turns bytes into data
+     * @param equivalence The equivalence that decides when data is the same
+     * @param <T>         The type of data stored in the tree
+     * @return The tree
+     * @throws IOException Thrown if the files cannot be read
+     */
+    public static <T> GeneralTree<T> recover(Path directory, Function<byte[], ? extends T> decoder,
+                                             Equivalence<? super T> equivalence) throws IOException {
+        Path snapshot = directory.resolve(SNAPSHOT);
+        if (!Files.exists(snapshot)) {
+            throw new IOException(format("No snapshot found in '%s'", directory));
+        }
+        GeneralTree<T> tree;
+        long snapshotSequence;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException(format("'%s' is not a tree snapshot", snapshot));
+            }
+            snapshotSequence = in.readLong();
+            int rootChildren = in.readInt();
+            tree = new GeneralTree<>(decoder.apply(readBytes(in)), equivalence);
+            Deque<GeneralNode<T>> parents = new ArrayDeque<>();
+            Deque<Integer> remaining = new ArrayDeque<>();
+            parents.push(tree.structure().getRoot());
+            remaining.push(rootChildren);
+            while (!parents.isEmpty()) {
+                if (remaining.peek() == 0) {
+                    parents.pop();
+                    remaining.pop();
+                    continue;
+                }
+                remaining.push(remaining.pop() - 1);
+                int children = in.readInt();
+                GeneralNode<T> node = tree.addNode(parents.peek(), decoder.apply(readBytes(in)));
+                parents.push(node);
+                remaining.push(children);
+            }
+        }
+        Path journal = directory.resolve(JOURNAL);
+        if (Files.exists(journal)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(journal)))) {
+                GeneralTree<T>.Replay replay = tree.replay();
+                byte[] record;
+                while ((record = readRecord(in)) != null) {
+                    DataInputStream recordIn = new DataInputStream(new ByteArrayInputStream(record));
+                    long recordSequence = recordIn.readLong();
+                    if (recordSequence <= snapshotSequence) {
+                        continue;
+                    }
+                    TreeChange.Type type = TreeChange.Type.values()[recordIn.readByte()];
+                    T data = decoder.apply(readBytes(recordIn));
+                    switch (type) {
+                        case ADDED:
+                            replay.add(decoder.apply(readBytes(recordIn)), data);
+                            break;
+                        case MOVED:
+                            replay.move(decoder.apply(readBytes(recordIn)), data);
+                            break;
+                        case REMOVED:
+                            replay.remove(data);
+                            break;
+                    }
+                }
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * Force all the changes journaled so far to disk.
+     *
+     * @throws IOException Thrown if writing failed
+     */
+    public synchronized void sync() throws IOException {
+        checkFailure();
+        try {
+            channel.force(false);
+            unsynced = 0;
+        } catch (IOException ex) {
+            failure = ex;
+            throw ex;
+        }
+    }
+
+    /**
+     * Write a snapshot of the tree and start a new, empty journal.
+     *
+     * @throws IOException Thrown if writing failed
+     */
+    public synchronized void compact() throws IOException {
+        checkFailure();
+        try {
+            writeSnapshot();
+            channel.truncate(0);
+            channel.position(0);
+            channel.force(true);
+            unsynced = 0;
+            journaled = 0;
+        } catch (IOException ex) {
+            failure = ex;
+            throw ex;
+        }
+    }
+
+    /**
+     * Stop journaling, forcing the changes journaled so far to disk.
+     *
+     * @throws IOException Thrown if writing failed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        tree.removeRecorder(recorder);
+        try {
+            if (failure == null) {
+                channel.force(false);
+            }
+        } finally {
+            channel.close();
+        }
+        checkFailure();
+    }
+
+    /**
+     * Write changes to the journal, forcing it to disk or compacting it when due.
+     *
+     * @param changes The changes
+     */
+    private synchronized void record(List<TreeChange<T>> changes) {
+        if (failure != null) {
+            throw new UncheckedIOException(new IOException("Journaling failed", failure));
+        }
+        long start;
+        try {
+            start = channel.position();
+        } catch (IOException ex) {
+            failure = ex;
+            throw new UncheckedIOException(ex);
+        }
+        long startSequence = sequence;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            for (TreeChange<T> change : changes) {
+                writeRecord(bytes, change);
+                if (bytes.size() >= WRITE_CHUNK) {
+                    write(bytes);
+                }
+            }
+            write(bytes);
+            unsynced += changes.size();
+            journaled += changes.size();
+            if (unsynced >= syncInterval || journaled >= compactInterval) {
+                channel.force(false);
+                unsynced = 0;
+            }
+        } catch (IOException ex) {
+            failure = ex;
+            discard(start, startSequence);
+            throw new UncheckedIOException(ex);
+        } catch (RuntimeException ex) {
+            failure = new IOException("Could not journal changes", ex);
+            discard(start, startSequence);
+            throw ex;
+        }
+        if (journaled >= compactInterval) {
+            try {
+                compact();
+            } catch (IOException ex) {
+                // the changes are already durable in the journal, so only later changes fail
+            }
+        }
+    }
+
+    /**
+     * Cut the records of changes that failed off the end of the journal, since the changes are undone. Records may
+     * already have been written if the changes did not fit in one chunk.
+     *
+     * @param start         The position of the first record
+     * @param startSequence The sequence number before the first record
+     */
+    private void discard(long start, long startSequence) {
+        sequence = startSequence;
+        try {
+            channel.truncate(start);
+            channel.position(start);
+            channel.force(false);
+        } catch (IOException ex) {
+            failure.addSuppressed(ex);
+        }
+    }
+
+    private void write(ByteArrayOutputStream bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        bytes.reset();
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw new IOException("Journaling failed", failure);
+        }
+    }
+
+    private void writeRecord(ByteArrayOutputStream bytes, TreeChange<T> change) throws IOException {
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(record);
+        out.writeLong(++sequence);
+        out.writeByte(change.getType().ordinal());
+        writeBytes(out, encoder.apply(change.getData()));
+        if (change.getType() != TreeChange.Type.REMOVED) {
+            writeBytes(out, encoder.apply(change.getParent()));
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record.toByteArray());
+        DataOutputStream header = new DataOutputStream(bytes);
+        header.writeInt(record.size());
+        header.writeInt((int) crc.getValue());
+        record.writeTo(bytes);
+    }
+
+    /**
+     * Read the next journal record, checking its length and checksum.
+     *
+     * @param in The input
+     * @return The record, or null if there are no more complete records
+     * @throws IOException Thrown if reading failed
+     */
+    private static byte[] readRecord(DataInputStream in) throws IOException {
+        try {
+            int length = in.readInt();
+            int checksum = in.readInt();
+            if (length < 0 || length > MAX_RECORD) {
+                return null;
+            }
+            byte[] record = new byte[length];
+            in.readFully(record);
+            CRC32 crc = new CRC32();
+            crc.update(record);
+            return (int) crc.getValue() == checksum ? record : null;
+        } catch (EOFException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Write the tree to a new snapshot file, which then replaces the old one. Nodes are written in pre-order, each
+     * with its number of children. The file and the rename are both forced to disk.
+     *
+     * @throws IOException Thrown if writing failed
+     */
+    private void writeSnapshot() throws IOException {
+        Path temporary = directory.resolve(SNAPSHOT + ".tmp");
+        try (FileChannel file = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            OutputStream stream = new BufferedOutputStream(Channels.newOutputStream(file));
+            DataOutputStream out = new DataOutputStream(stream);
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(sequence);
+            TreeStructure<GeneralNode<T>, T> structure = tree.structure();
+            Deque<GeneralNode<T>> stack = new ArrayDeque<>();
+            stack.push(structure.getRoot());
+            while (!stack.isEmpty()) {
+                GeneralNode<T> node = stack.pop();
+                List<GeneralNode<T>> children = structure.getChildren(node);
+                out.writeInt(children.size());
+                writeBytes(out, encoder.apply(structure.getData(node)));
+                for (int i = children.size() - 1; i >= 0; --i) {
+                    stack.push(children.get(i));
+                }
+            }
+            out.flush();
+            file.force(true);
+        }
+        Files.move(temporary, directory.resolve(SNAPSHOT), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory();
+    }
+
+    /**
+     * Force the directory to disk, so that the new snapshot survives a crash before the journal is truncated.
+     *
+     * @throws IOException Thrown if forcing failed
+     */
+    private void forceDirectory() throws IOException {
+        FileChannel file;
+        try {
+            file = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (IOException ex) {
+            // some platforms, like Windows, cannot open a directory, and make the rename durable themselves
+            return;
+        }
+        try (FileChannel dir = file) {
+            dir.force(true);
+        }
+    }
+
+    /**
+     * Find the last sequence number used in a directory, so that new records are never mistaken for old ones.
+     *
+     * @param directory The directory
+     * @return The last sequence number, or 0 if there is none
+     * @throws IOException Thrown if reading failed
+     */
+    private static long readLastSequence(Path directory) throws IOException {
+        long last = 0;
+        Path snapshot = directory.resolve(SNAPSHOT);
+        if (Files.exists(snapshot)) {
+            try (DataInputStream in = new DataInputStream(Files.newInputStream(snapshot))) {
+                if (in.readInt() == SNAPSHOT_MAGIC) {
+                    last = in.readLong();
+                }
+            }
+        }
+        Path journal = directory.resolve(JOURNAL);
+        if (Files.exists(journal)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(journal)))) {
+                byte[] record;
+                while ((record = readRecord(in)) != null) {
+                    last = Math.max(last, new DataInputStream(new ByteArrayInputStream(record)).readLong());
+                }
+            }
+        }
+        return last;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+}
@@ -0,0 +1,606 @@
+package me.legrange.tree;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
+
+import static java.lang.String.format;
+
+/**
+ * Writes trees as nested JSON, and reads them back. A node of a general tree is written as
+ * <code>{"data":...,"children":[...]}</code> and a node of a binary tree as
+ * <code>{"data":...,"left":{...},"right":{...}}</code>, leaving out empty children. The data of a node must come
+ * before its children.
+ * <p>
+ * Both directions stream: nodes are written as the tree is traversed, and added to the tree as they are read, so
+ * the memory used depends on the depth of the tree rather than the size of the document. Data is mapped to and from
+ * JSON text by the caller, for example with quote() and unquote() for strings. Data is not checked for uniqueness
+ * when reading, since that would need memory for the whole tree, but binary search trees are checked for order.
+ */
+public final class TreeJson {
+
+    private static final String DATA = "data";
+    private static final String CHILDREN = "children";
+    private static final String LEFT = "left";
+    private static final String RIGHT = "right";
+
+    private TreeJson() {
+    }
+
+    /**
+     * Write a general tree.
+     *
+     * @param tree    The tree
+     * @param out     The writer to write to
+     * @param encoder The function that returns the JSON text for data
+     * @param <T>     The type of data stored in the tree
+     * @throws IOException Thrown if writing fails
+     */
+    public static <T> void write(GeneralTree<T> tree, Writer out, Function<? super T, String> encoder) throws IOException {
+        TreeStructure<GeneralNode<T>, T> structure = tree.structure();
+        Deque<Iterator<GeneralNode<T>>> open = new ArrayDeque<>();
+        GeneralNode<T> node = structure.getRoot();
+        while (true) {
+            writeData(out, encoder, node.getData());
+            List<GeneralNode<T>> children = structure.getChildren(node);
+            if (!children.isEmpty()) {
+                writeName(out, CHILDREN);
+                out.write('[');
+                Iterator<GeneralNode<T>> siblings = children.iterator();
+                open.push(siblings);
+                node = siblings.next();
+                continue;
+            }
+            out.write('}');
+            node = null;
+            while (node == null && !open.isEmpty()) {
+                Iterator<GeneralNode<T>> siblings = open.peek();
+                if (siblings.hasNext()) {
+                    out.write(',');
+                    node = siblings.next();
+                } else {
+                    open.pop();
+                    out.write("]}");
+                }
+            }
+            if (node == null) {
+                out.flush();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Write a binary tree.
+     *
+     * @param tree    The tree
+     * @param out     The writer to write to
+     * @param encoder The function that returns the JSON text for data
+     * @param <T>     The type of data stored in the tree
+     * @throws IOException Thrown if writing fails
+     */
+    public static <T> void write(BinaryTree<T> tree, Writer out, Function<? super T, String> encoder) throws IOException {
+        writeBinary(tree, out, encoder);
+    }
+
+    /**
+     * Write a binary search tree.
+     *
+     * @param tree    The tree
+     * @param out     The writer to write to
+     * @param encoder The function that returns the JSON text for data
+     * @param <T>     The type of data stored in the tree
+     * @throws IOException Thrown if writing fails
+     */
+    public static <T extends Comparable> void write(BinarySearchTree<T> tree, Writer out, Function<? super T, String> encoder) throws IOException {
+        writeBinary(tree, out, encoder);
+    }
+
+    /**
+     * Read a general tree.
+     *
+     * @param in      The reader to read from
+     * @param decoder The function that returns the data for JSON text
+     * @param <T>     The type of data stored in the tree
+     * @return The tree
+     * @throws IOException Thrown if reading fails, or the input is not a valid tree
+     */
+    public static <T> GeneralTree<T> readGeneralTree(Reader in, Function<String, ? extends T> decoder) throws IOException {
+        return readGeneralTree(in, decoder, Equivalence.equality());
+    }
+
+    /**
+     * Read a general tree in which data is compared with the given equivalence.
+     *
+     * @param in          The reader to read from
+     * @param decoder     The function that returns the data for JSON text
+     * @param equivalence The equivalence that decides when data is the same
+     * @param <T>         The type of data stored in the tree
+     * @return The tree
+     * @throws IOException Thrown if reading fails, or the input is not a valid tree
+     */
+    public static <T> GeneralTree<T> readGeneralTree(Reader in, Function<String, ? extends T> decoder,
+                                                     Equivalence<? super T> equivalence) throws IOException {
+        JsonInput json = new JsonInput(in);
+        json.expect('{');
+        GeneralTree<T> tree = new GeneralTree<>(json.readData(decoder), equivalence);
+        Deque<GeneralNode<T>> open = new ArrayDeque<>();
+        GeneralNode<T> node = tree.structure().getRoot();
+        while (true) {
+            int c = json.next();
+            if (c == ',') {
+                json.expectName(CHILDREN);
+                json.expect('[');
+                if (json.peek() != ']') {
+                    open.push(node);
+                    json.expect('{');
+                    node = tree.addNode(node, json.readData(decoder));
+                    continue;
+                }
+                json.expect(']');
+                json.expect('}');
+            } else if (c != '}') {
+                throw json.unexpected(c);
+            }
+            node = null;
+            while (node == null && !open.isEmpty()) {
+                c = json.next();
+                if (c == ',') {
+                    json.expect('{');
+                    node = tree.addNode(open.peek(), json.readData(decoder));
+                } else if (c == ']') {
+                    open.pop();
+                    json.expect('}');
+                } else {
+                    throw json.unexpected(c);
+                }
+            }
+            if (node == null) {
+                json.expectEnd();
+                return tree;
+            }
+        }
+    }
+
+    /**
+     * Read a binary tree.
+     *
+     * @param in      The reader to read from
+     * @param decoder The function that returns the data for JSON text
+     * @param <T>     The type of data stored in the tree
+     * @return The tree
+     * @throws IOException Thrown if reading fails, or the input is not a valid tree
+     */
+    public static <T> BinaryTree<T> readBinaryTree(Reader in, Function<String, ? extends T> decoder) throws IOException {
+        return readBinaryTree(in, decoder, Equivalence.equality());
+    }
+
+    /**
+     * Read a binary tree in which data is compared with the given equivalence.
+     *
+     * @param in          The reader to read from
+     * @param decoder     The function that returns the data for JSON text
+     * @param equivalence The equivalence that decides when data is the same
+     * @param <T>         The type of data stored in the tree
+     * @return The tree
+     * @throws IOException Thrown if reading fails, or the input is not a valid tree
+     */
+    public static <T> BinaryTree<T> readBinaryTree(Reader in, Function<String, ? extends T> decoder,
+                                                   Equivalence<? super T> equivalence) throws IOException {
+        JsonInput json = new JsonInput(in);
+        json.expect('{');
+        return readBinary(json, new BinaryTree<>(json.readData(decoder), equivalence), decoder, false);
+    }
+
+    /**
+     * Read a binary search tree. Every node must sort after the nodes in its left subtree and before the nodes in
+     * its right subtree.
+     *
+     * @param in      The reader to read from
+     * @param decoder The function that returns the data for JSON text
+     * @param <T>     The type of data stored in the tree
+     * @return The tree
+     * @throws IOException Thrown if reading fails, or the input is not a valid tree
+     */
+    public static <T extends Comparable> BinarySearchTree<T> readBinarySearchTree(Reader in, Function<String, ? extends T> decoder) throws IOException {
+        JsonInput json = new JsonInput(in);
+        json.expect('{');
+        return readBinary(json, new BinarySearchTree<>(json.readData(decoder)), decoder, true);
+    }
+
+    /**
+     * Return the JSON string for text.
+     *
+     * @param text The text
+     * @return The JSON string, including the quotes
+     */
+    public static String quote(String text) {
+        StringBuilder json = new StringBuilder(text.length() + 2);
+        json.append('"');
+        for (int i = 0; i < text.length(); ++i) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    /**
+     * Return the text in a JSON string.
+     *
+     * @param json The JSON string, including the quotes
+     * @return The text
+     */
+    public static String unquote(String json) {
+        if (json.length() < 2 || json.charAt(0) != '"' || json.charAt(json.length() - 1) != '"') {
+            throw new IllegalArgumentException(format("'%s' is not a JSON string", json));
+        }
+        StringBuilder text = new StringBuilder(json.length() - 2);
+        for (int i = 1; i < json.length() - 1; ++i) {
+            char c = json.charAt(i);
+            if (c == '"' || c < 0x20) {
+                throw new IllegalArgumentException(format("'%s' is not a JSON string", json));
+            }
+            if (c != '\\') {
+                text.append(c);
+                continue;
+            }
+            if (++i == json.length() - 1) {
+                throw new IllegalArgumentException(format("'%s' is not a JSON string", json));
+            }
+            c = json.charAt(i);
+            switch (c) {
+                case '"':
+                case '\\':
+                case '/':
+                    text.append(c);
+                    break;
+                case 'b':
+                    text.append('\b');
+                    break;
+                case 'f':
+                    text.append('\f');
+                    break;
+                case 'n':
+                    text.append('\n');
+                    break;
+                case 'r':
+                    text.append('\r');
+                    break;
+                case 't':
+                    text.append('\t');
+                    break;
+                case 'u':
+                    if (i + 5 > json.length() - 1) {
+                        throw new IllegalArgumentException(format("'%s' is not a JSON string", json));
+                    }
+                    try {
+                        text.append((char) Integer.parseInt(json.substring(i + 1, i + 5), 16));
+                    } catch (NumberFormatException ex) {
+                        throw new IllegalArgumentException(format("'%s' is not a JSON string", json), ex);
+                    }
+                    i += 4;
+                    break;
+                default:
+                    throw new IllegalArgumentException(format("'%s' is not a JSON string", json));
+            }
+        }
+        return text.toString();
+    }
+
+    private static <T> void writeBinary(AbstractBinaryTree<T> tree, Writer out, Function<? super T, String> encoder) throws IOException {
+        BinaryNode<T> node = tree.root;
+        while (node != null) {
+            writeData(out, encoder, node.getData());
+            if (node.getLeft() != null) {
+                writeName(out, LEFT);
+                node = node.getLeft();
+                continue;
+            }
+            if (node.getRight() != null) {
+                writeName(out, RIGHT);
+                node = node.getRight();
+                continue;
+            }
+            out.write('}');
+            // close the node and its ancestors, until one has a right subtree still to write
+            BinaryNode<T> closed = node;
+            node = null;
+            while (node == null && closed != tree.root) {
+                BinaryNode<T> parent = closed.getParentNode();
+                if (closed == parent.getLeft() && parent.getRight() != null) {
+                    writeName(out, RIGHT);
+                    node = parent.getRight();
+                } else {
+                    out.write('}');
+                    closed = parent;
+                }
+            }
+        }
+        out.flush();
+    }
+
+    private static <T> void writeData(Writer out, Function<? super T, String> encoder, T data) throws IOException {
+        out.write("{\"");
+        out.write(DATA);
+        out.write("\":");
+        out.write(encoder.apply(data));
+    }
+
+    private static void writeName(Writer out, String name) throws IOException {
+        out.write(",\"");
+        out.write(name);
+        out.write("\":");
+    }
+
+    private static <T, B extends AbstractBinaryTree<T>> B readBinary(JsonInput json, B tree, Function<String, ? extends T> decoder,
+                                                                     boolean ordered) throws IOException {
+        Deque<BinaryFrame<T>> open = new ArrayDeque<>();
+        BinaryFrame<T> frame = new BinaryFrame<>(tree.root, null, null);
+        while (true) {
+            int c = json.next();
+            if (c == ',') {
+                String name = json.readName();
+                boolean left;
+                if (LEFT.equals(name) && !frame.hasLeft) {
+                    left = true;
+                    frame.hasLeft = true;
+                } else if (RIGHT.equals(name) && !frame.hasRight) {
+                    left = false;
+                    frame.hasRight = true;
+                } else {
+                    throw json.error(format("Unexpected field '%s'", name));
+                }
+                if (json.peek() != '{') {
+                    if (!"null".equals(json.readValue())) {
+                        throw json.error(format("Expected an object or null for '%s'", name));
+                    }
+                    continue;
+                }
+                json.expect('{');
+                T data = json.readData(decoder);
+                T low = left ? frame.low : frame.node.getData();
+                T high = left ? frame.node.getData() : frame.high;
+                if (ordered && (low != null && compare(data, low) <= 0 || high != null && compare(data, high) >= 0)) {
+                    throw json.error(format("Data '%s' is out of order", data));
+                }
+                open.push(frame);
+                frame = new BinaryFrame<>(tree.addNode(frame.node, left, data), low, high);
+                continue;
+            }
+            if (c != '}') {
+                throw json.unexpected(c);
+            }
+            if (open.isEmpty()) {
+                json.expectEnd();
+                return tree;
+            }
+            frame = open.pop();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compare(Object data, Object other) {
+        return ((Comparable) data).compareTo(other);
+    }
+
+    /** A binary node being read, with the bounds its descendants must sort between */
+    private static final class BinaryFrame<T> {
+
+        private final BinaryNode<T> node;
+        private final T low;
+        private final T high;
+        private boolean hasLeft;
+        private boolean hasRight;
+
+        private BinaryFrame(BinaryNode<T> node, T low, T high) {
+            this.node = node;
+            this.low = low;
+            this.high = high;
+        }
+    }
+
+    /** Reads JSON tokens from a reader through a buffer, keeping track of the position for error messages */
+    private static final class JsonInput {
+
+        private final Reader in;
+        private final char[] buffer = new char[8192];
+        private int length;
+        private int position;
+        private long offset;
+
+        private JsonInput(Reader in) {
+            this.in = in;
+        }
+
+        /**
+         * Read the data field of a node.
+         */
+        private <T> T readData(Function<String, ? extends T> decoder) throws IOException {
+            expectName(DATA);
+            return decoder.apply(readValue());
+        }
+
+        private void expectName(String expected) throws IOException {
+            String name = readName();
+            if (!expected.equals(name)) {
+                throw error(format("Expected field '%s' but found '%s'", expected, name));
+            }
+        }
+
+        /**
+         * Read a field name and the colon after it.
+         */
+        private String readName() throws IOException {
+            if (peek() != '"') {
+                throw unexpected(next());
+            }
+            StringBuilder name = new StringBuilder();
+            readString(name);
+            expect(':');
+            try {
+                return unquote(name.toString());
+            } catch (IllegalArgumentException ex) {
+                throw error(ex.getMessage());
+            }
+        }
+
+        /**
+         * Read a complete value and return its JSON text.
+         */
+        private String readValue() throws IOException {
+            StringBuilder value = new StringBuilder();
+            int c = peek();
+            if (c == '"') {
+                readString(value);
+            } else if (c == '{' || c == '[') {
+                int depth = 0;
+                do {
+                    c = peekRaw();
+                    if (c == '"') {
+                        readString(value);
+                        continue;
+                    }
+                    c = read();
+                    if (c < 0) {
+                        throw error("Unexpected end of input");
+                    }
+                    value.append((char) c);
+                    if (c == '{' || c == '[') {
+                        depth++;
+                    } else if (c == '}' || c == ']') {
+                        depth--;
+                    }
+                } while (depth > 0);
+            } else {
+                while ((c = peekRaw()) >= 0 && (Character.isLetterOrDigit(c) || c == '-' || c == '+' || c == '.')) {
+                    value.append((char) read());
+                }
+                if (value.length() == 0) {
+                    throw unexpected(next());
+                }
+            }
+            return value.toString();
+        }
+
+        /**
+         * Read a string, including its quotes, without decoding it.
+         */
+        private void readString(StringBuilder text) throws IOException {
+            text.append((char) read());
+            while (true) {
+                int c = read();
+                if (c < 0) {
+                    throw error("Unterminated string");
+                }
+                if (c < 0x20) {
+                    throw error("Control character in string");
+                }
+                text.append((char) c);
+                if (c == '"') {
+                    return;
+                }
+                if (c == '\\') {
+                    c = read();
+                    if (c < 0) {
+                        throw error("Unterminated string");
+                    }
+                    text.append((char) c);
+                }
+            }
+        }
+
+        private void expect(char expected) throws IOException {
+            int c = next();
+            if (c != expected) {
+                throw error(format("Expected '%c' but found %s", expected, describe(c)));
+            }
+        }
+
+        private void expectEnd() throws IOException {
+            int c = peek();
+            if (c >= 0) {
+                throw error(format("Expected the end of input but found %s", describe(c)));
+            }
+        }
+
+        /**
+         * Consume and return the next character that is not white space, or -1 at the end of input.
+         */
+        private int next() throws IOException {
+            peek();
+            return read();
+        }
+
+        /**
+         * Return the next character that is not white space without consuming it, or -1 at the end of input.
+         */
+        private int peek() throws IOException {
+            int c;
+            while ((c = peekRaw()) == ' ' || c == '\t' || c == '\n' || c == '\r') {
+                read();
+            }
+            return c;
+        }
+
+        private int peekRaw() throws IOException {
+            if (position == length) {
+                length = in.read(buffer);
+                position = 0;
+                if (length <= 0) {
+                    length = 0;
+                    return -1;
+                }
+            }
+            return buffer[position];
+        }
+
+        private int read() throws IOException {
+            int c = peekRaw();
+            if (c >= 0) {
+                position++;
+                offset++;
+            }
+            return c;
+        }
+
+        private IOException unexpected(int c) {
+            return error(format("Unexpected %s", describe(c)));
+        }
+
+        private IOException error(String message) {
+            return new IOException(format("%s at character %d", message, offset));
+        }
+
+        private static String describe(int c) {
+            return c < 0 ? "end of input" : format("'%c'", (char) c);
+        }
+    }
+
+}
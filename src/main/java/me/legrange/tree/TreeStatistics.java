@@ -0,0 +1,74 @@
+package me.legrange.tree;
+
+import java.util.Collections;
+import java.util.SortedMap;
+
+import static java.lang.String.format;
+
+/** The shape and estimated memory use of a tree, as it is held in memory. */
+public final class TreeStatistics {
+
+    private final long nodeCount;
+    private final long leafCount;
+    private final SortedMap<Integer, Long> fanOuts;
+    private final long estimatedBytes;
+
+    TreeStatistics(long nodeCount, long leafCount, SortedMap<Integer, Long> fanOuts, long estimatedBytes) {
+        this.nodeCount = nodeCount;
+        this.leafCount = leafCount;
+        this.fanOuts = Collections.unmodifiableSortedMap(fanOuts);
+        this.estimatedBytes = estimatedBytes;
+    }
+
+    /**
+     * Return the number of nodes in memory.
+     *
+     * @return The number of nodes
+     */
+    public long getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Return the number of nodes in memory without children.
+     *
+     * @return The number of leaves
+     */
+    public long getLeafCount() {
+        return leafCount;
+    }
+
+    /**
+     * Return the largest number of children of any node.
+     *
+     * @return The maximum fan-out
+     */
+    public int getMaxFanOut() {
+        return fanOuts.isEmpty() ? 0 : fanOuts.lastKey();
+    }
+
+    /**
+     * Return the fan-out distribution: for each number of children, the number of nodes with that many children.
+     *
+     * @return The distribution, ordered by number of children
+     */
+    public SortedMap<Integer, Long> getFanOutDistribution() {
+        return fanOuts;
+    }
+
+    /**
+     * Return the estimated number of bytes retained by the tree structure, not counting the data itself. The
+     * estimate assumes a 64-bit JVM with compressed object pointers.
+     *
+     * @return The estimated number of bytes
+     */
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return format("%d nodes (%d leaves), maximum fan-out %d, about %d bytes", nodeCount, leafCount,
+                getMaxFanOut(), estimatedBytes);
+    }
+}
@@ -0,0 +1,35 @@
+package me.legrange.tree;
+
+import java.util.List;
+
+/** Access to the nodes of a tree, so that algorithms can be shared between tree implementations.
+ *
+ * @param <N> The type of the nodes
+ * @param <T> The type of the data contained in the nodes
+ */
+interface TreeStructure<N, T> {
+
+    /**
+     * Return the root node.
+     *
+     * @return The root
+     */
+    N getRoot();
+
+    /**
+     * Return the data in a node.
+     *
+     * @param node The node
+     * @return The data
+     */
+    T getData(N node);
+
+    /**
+     * Return the children of a node, in order.
+     *
+     * @param node The node
+     * @return The children
+     */
+    List<N> getChildren(N node);
+
+}
@@ -0,0 +1,30 @@
+package me.legrange.tree;
+
+/** A visitor that is called for data as a tree is walked depth-first. The result of each call decides if the walk
+ * continues into the subtree, skips it, or stops. If preVisit() skips a subtree, postVisit() is not called for it.
+ *
+ * @param <T> The type of data in the tree
+ */
+public interface TreeVisitor<T> {
+
+    /**
+     * Called for data before its children are visited.
+     *
+     * @param data The data
+     * @return How to continue
+     */
+    default VisitResult preVisit(T data) {
+        return VisitResult.CONTINUE;
+    }
+
+    /**
+     * Called for data after its children have been visited.
+     *
+     * @param data The data
+     * @return How to continue
+     */
+    default VisitResult postVisit(T data) {
+        return VisitResult.CONTINUE;
+    }
+
+}
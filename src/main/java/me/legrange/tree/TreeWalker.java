@@ -0,0 +1,99 @@
+package me.legrange.tree;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/** Walks a tree depth-first for a visitor, using an explicit stack so that deep trees do not exhaust the call
+ * stack. The children of a node are only fetched if the visitor continues into its subtree.
+ */
+final class TreeWalker {
+
+    private TreeWalker() {
+    }
+
+    /**
+     * Walk a tree.
+     *
+     * @param structure The tree structure
+     * @param visitor   The visitor
+     * @param <N>       The type of the nodes
+     * @param <T>       The type of the data
+     */
+    static <N, T> void walk(TreeStructure<N, T> structure, TreeVisitor<? super T> visitor) {
+        N root = structure.getRoot();
+        VisitResult result = visitor.preVisit(structure.getData(root));
+        if (result != VisitResult.CONTINUE) {
+            return;
+        }
+        Deque<Frame<N>> stack = new ArrayDeque<>();
+        stack.push(new Frame<>(root, structure.getChildren(root)));
+        while (!stack.isEmpty()) {
+            Frame<N> frame = stack.peek();
+            if (frame.next < frame.children.size()) {
+                N child = frame.children.get(frame.next++);
+                result = visitor.preVisit(structure.getData(child));
+                if (result == VisitResult.TERMINATE) {
+                    return;
+                }
+                if (result != VisitResult.SKIP_SUBTREE) {
+                    stack.push(new Frame<>(child, structure.getChildren(child)));
+                }
+                continue;
+            }
+            stack.pop();
+            if (visitor.postVisit(structure.getData(frame.node)) == VisitResult.TERMINATE) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Walk the first levels of a tree that only offers walk(), and return its data with the level of each, in
+     * pre-order.
+     *
+     * @param tree     The tree
+     * @param maxDepth The number of levels to include
+     * @param <T>      The type of the data
+     * @return The data on the levels
+     */
+    static <T> List<Leveled<T>> preOrder(Tree<T> tree, int maxDepth) {
+        List<Leveled<T>> result = new ArrayList<>();
+        if (TreeIterators.checkDepth(maxDepth) == 0) {
+            return result;
+        }
+        int[] level = {0};
+        tree.walk(new TreeVisitor<T>() {
+            @Override
+            public VisitResult preVisit(T data) {
+                result.add(new Leveled<>(data, level[0]));
+                if (level[0] + 1 >= maxDepth) {
+                    return VisitResult.SKIP_SUBTREE;
+                }
+                level[0]++;
+                return VisitResult.CONTINUE;
+            }
+
+            @Override
+            public VisitResult postVisit(T data) {
+                level[0]--;
+                return VisitResult.CONTINUE;
+            }
+        });
+        return result;
+    }
+
+    private static final class Frame<N> {
+
+        private final N node;
+        private final List<N> children;
+        private int next;
+
+        private Frame(N node, List<N> children) {
+            this.node = node;
+            this.children = children;
+        }
+    }
+
+}
@@ -0,0 +1,14 @@
+package me.legrange.tree;
+
+/** The result returned by a tree visitor, which controls how the walk continues.
+ */
+public enum VisitResult {
+
+    /** Continue the walk */
+    CONTINUE,
+    /** Do not visit the children of the data just visited. Only meaningful when returned from preVisit(). */
+    SKIP_SUBTREE,
+    /** Stop the walk */
+    TERMINATE
+
+}
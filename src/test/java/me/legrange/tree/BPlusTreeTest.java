@@ -0,0 +1,90 @@
+package me.legrange.tree;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BPlusTreeTest {
+
+    private static final int SIZE = 10_000;
+
+    private static BPlusTree<Integer> tree;
+
+    @BeforeAll
+    static void setup() {
+        List<Integer> data = IntStream.range(0, SIZE).map(i -> i * 2).boxed().collect(Collectors.toList());
+        Collections.shuffle(data, new Random(42));
+        tree = new BPlusTree<>(4);
+        tree.addAll(data);
+    }
+
+    @Test
+    void inOrderDepthStream() {
+        List<Integer> have = tree.inOrderDepthStream().collect(Collectors.toList());
+        List<Integer> want = IntStream.range(0, SIZE).map(i -> i * 2).boxed().collect(Collectors.toList());
+        assertEquals(want, have, "In-order stream must match");
+    }
+
+    @Test
+    void size() {
+        assertEquals(SIZE, tree.size(), "Size must match");
+        assertEquals(SIZE, tree.inOrderDepthStream().count(), "Stream size must match");
+    }
+
+    @Test
+    void contains() {
+        for (int i = 0; i < SIZE * 2; ++i) {
+            assertEquals(i % 2 == 0, tree.contains(i), "Must contain even numbers only");
+        }
+    }
+
+    @Test
+    void find() {
+        assertEquals(0, tree.find(0), "Must match ");
+        assertEquals(0, tree.find(-5), "Must match ");
+        assertEquals(102, tree.find(101), "Must match ");
+        assertEquals(SIZE * 2 - 2, tree.find(SIZE * 3), "Must match ");
+    }
+
+    @Test
+    void depth() {
+        assertTrue(tree.getDepth() <= 10, "Depth must be logarithmic");
+        BPlusTree<Integer> wide = new BPlusTree<>();
+        wide.addAll(IntStream.range(0, SIZE).boxed().collect(Collectors.toList()));
+        assertEquals(3, wide.getDepth(), "Depth must match");
+    }
+
+    @Test
+    void duplicate() {
+        assertThrows(IllegalArgumentException.class, () -> tree.add(10));
+        assertEquals(SIZE, tree.size(), "Size must not change");
+    }
+
+    @Test
+    void failedAddAllChangesNothing() {
+        BPlusTree<Integer> small = new BPlusTree<>(4);
+        small.addAll(Arrays.asList(1, 2, 3));
+        assertThrows(IllegalArgumentException.class, () -> small.addAll(Arrays.asList(4, 5, 2)));
+        assertThrows(IllegalArgumentException.class, () -> small.addAll(Arrays.asList(6, 7, 6)));
+        assertEquals(Arrays.asList(1, 2, 3), small.inOrderDepthStream().collect(Collectors.toList()), "Tree must not change");
+    }
+
+    @Test
+    void empty() {
+        BPlusTree<String> empty = new BPlusTree<>();
+        assertEquals(false, empty.contains("a"), "Must not contain a");
+        assertEquals(new ArrayList<>(), empty.inOrderDepthStream().collect(Collectors.toList()), "Must be empty");
+    }
+
+}
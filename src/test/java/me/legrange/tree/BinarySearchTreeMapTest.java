@@ -0,0 +1,127 @@
+package me.legrange.tree;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinarySearchTreeMapTest {
+
+    @Test
+    void putGetRemove() {
+        BinarySearchTreeMap<Integer, String> map = new BinarySearchTreeMap<>();
+        assertNull(map.put(50, "fifty"), "New key must have no old value");
+        assertNull(map.put(30, "thirty"), "New key must have no old value");
+        assertNull(map.put(70, "seventy"), "New key must have no old value");
+        assertEquals("fifty", map.put(50, "FIFTY"), "Old value must be returned");
+        assertEquals(3, map.size(), "Size must match");
+        assertEquals("FIFTY", map.get(50), "Value must match");
+        assertNull(map.get(40), "Missing key must have no value");
+        assertTrue(map.containsKey(30), "Key must be found");
+        assertEquals("FIFTY", map.remove(50), "Removed value must be returned");
+        assertNull(map.remove(50), "Removed key must be gone");
+        assertEquals(Arrays.asList(30, 70), new ArrayList<>(map.keySet()), "Keys must match");
+        assertThrows(NullPointerException.class, () -> map.put(null, "null"));
+    }
+
+    @Test
+    void matchesTreeMap() {
+        Random random = new Random(42);
+        BinarySearchTreeMap<Integer, Integer> map = new BinarySearchTreeMap<>();
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        for (int i = 0; i < 10_000; ++i) {
+            int key = random.nextInt(1000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key), "Removed value must match");
+            } else {
+                assertEquals(expected.put(key, i), map.put(key, i), "Old value must match");
+            }
+        }
+        assertEquals(expected, map, "Maps must be equal");
+        assertEquals(expected.hashCode(), map.hashCode(), "Hash codes must match");
+        assertEquals(new ArrayList<>(expected.entrySet()), map.entryStream().collect(Collectors.toList()), "Entries must be in key order");
+    }
+
+    @Test
+    void computeIfAbsent() {
+        BinarySearchTreeMap<String, List<Integer>> map = new BinarySearchTreeMap<>();
+        map.computeIfAbsent("b", key -> new ArrayList<>()).add(1);
+        map.computeIfAbsent("a", key -> new ArrayList<>()).add(2);
+        map.computeIfAbsent("b", key -> new ArrayList<>()).add(3);
+        assertEquals(Arrays.asList(1, 3), map.get("b"), "Existing value must be reused");
+        assertNull(map.computeIfAbsent("c", key -> null), "Null must not be mapped");
+        assertFalse(map.containsKey("c"), "Null must not be mapped");
+        assertThrows(ConcurrentModificationException.class, () -> map.computeIfAbsent("d", key -> map.put("e", null)));
+    }
+
+    @Test
+    void navigation() {
+        BinarySearchTreeMap<Integer, String> map = new BinarySearchTreeMap<>();
+        for (int key : new int[]{50, 30, 70, 20, 40, 60, 80}) {
+            map.put(key, "v" + key);
+        }
+        assertEquals(20, map.firstKey(), "First key must match");
+        assertEquals(80, map.lastKey(), "Last key must match");
+        assertEquals(new AbstractMap.SimpleEntry<>(40, "v40"), map.floorEntry(45), "Floor must match");
+        assertEquals(40, map.floorKey(40), "Floor must include the key");
+        assertEquals(30, map.lowerKey(40), "Lower must exclude the key");
+        assertEquals(50, map.ceilingKey(45), "Ceiling must match");
+        assertEquals(60, map.higherKey(50), "Higher must exclude the key");
+        assertNull(map.lowerKey(20), "Nothing is lower than the first key");
+        assertNull(map.higherKey(80), "Nothing is higher than the last key");
+        assertThrows(NoSuchElementException.class, () -> new BinarySearchTreeMap<Integer, String>().firstKey());
+        assertNull(new BinarySearchTreeMap<Integer, String>().firstEntry(), "Empty map has no first entry");
+    }
+
+    @Test
+    void navigationEntriesAreSnapshots() {
+        BinarySearchTreeMap<Integer, String> map = new BinarySearchTreeMap<>();
+        for (int key : new int[]{5, 3, 7, 6, 8}) {
+            map.put(key, "v" + key);
+        }
+        Map.Entry<Integer, String> entry = map.floorEntry(5);
+        map.remove(5);
+        assertEquals(new AbstractMap.SimpleEntry<>(5, "v5"), entry, "Entry must not change when the map does");
+        assertThrows(UnsupportedOperationException.class, () -> map.firstEntry().setValue("changed"));
+        assertEquals("v3", map.get(3), "Map must not change through an entry");
+    }
+
+    @Test
+    void iteratorRemove() {
+        BinarySearchTreeMap<Integer, String> map = new BinarySearchTreeMap<>();
+        for (int key : new int[]{50, 30, 70, 20, 40, 60, 80}) {
+            map.put(key, "v" + key);
+        }
+        Iterator<Map.Entry<Integer, String>> iterator = map.entrySet().iterator();
+        List<Integer> seen = new ArrayList<>();
+        while (iterator.hasNext()) {
+            int key = iterator.next().getKey();
+            seen.add(key);
+            if (key % 20 != 0) {
+                iterator.remove();
+            }
+        }
+        assertEquals(Arrays.asList(20, 30, 40, 50, 60, 70, 80), seen, "Every key must be visited once");
+        assertEquals(Arrays.asList(20, 40, 60, 80), new ArrayList<>(map.keySet()), "Keys must match");
+        assertThrows(ConcurrentModificationException.class, () -> {
+            for (Integer key : map.keySet()) {
+                map.remove(key);
+            }
+        });
+    }
+}
@@ -3,6 +3,7 @@ package me.legrange.tree;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
@@ -10,6 +11,7 @@ import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class BinarySearchTreeTest {
@@ -88,4 +90,56 @@ class BinarySearchTreeTest {
         assertEquals(p1.get(), 0);
     }
 
-}
\ No newline at end of file
+    @Test
+    void addAll() {
+        BinarySearchTree<Integer> tree = new BinarySearchTree<>(0);
+        tree.addAll(Arrays.asList(5, -5, 3, 7));
+        List<Integer> have = tree.inOrderDepthStream().collect(Collectors.toList());
+        assertEquals(Arrays.asList(-5, 0, 3, 5, 7), have, "In-order depth first must match");
+        assertThrows(IllegalArgumentException.class, () -> tree.addAll(Arrays.asList(8, 3)));
+        assertThrows(IllegalArgumentException.class, () -> tree.addAll(Arrays.asList(9, 9)));
+        assertEquals(false, tree.contains(8), "Must not contain 8");
+        assertEquals(false, tree.contains(9), "Must not contain 9");
+    }
+
+    @Test
+    void changeFeed() {
+        BinarySearchTree<Integer> tree = new BinarySearchTree<>(0);
+        List<TreeChange<Integer>> have = new ArrayList<>();
+        tree.subscribe(new ChangeSubscriber<Integer>() {
+            @Override
+            public void onSubscribe(ChangeSubscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(List<TreeChange<Integer>> changes) {
+                have.addAll(changes);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+            }
+        });
+        tree.add(5);
+        tree.addAll(Arrays.asList(-5, 7));
+        assertEquals(Arrays.asList(
+                new TreeChange<>(TreeChange.Type.ADDED, 5, 0, null),
+                new TreeChange<>(TreeChange.Type.ADDED, -5, 0, null),
+                new TreeChange<>(TreeChange.Type.ADDED, 7, 5, null)), have, "Changes must match");
+    }
+
+    @Test
+    void walk() {
+        List<Integer> visited = new ArrayList<>();
+        symmetric.walk(new TreeVisitor<Integer>() {
+            @Override
+            public VisitResult preVisit(Integer data) {
+                visited.add(data);
+                return data < 0 ? VisitResult.SKIP_SUBTREE : VisitResult.CONTINUE;
+            }
+        });
+        assertEquals(Arrays.asList(0, -1, 1, 10, 100, 1000), visited, "Walk must match");
+    }
+
+}
@@ -3,12 +3,17 @@ package me.legrange.tree;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class BinaryTreeTest {
 
@@ -105,4 +110,113 @@ class BinaryTreeTest {
         assertEquals(true, symmetric.getParent("h").get().equals("4"), "Parent for h is 4");
     }
 
-}
\ No newline at end of file
+    @Test
+    void batch() {
+        BinaryTree<String> tree = new BinaryTree<>("ROOT");
+        tree.batch()
+                .addLeft("A")
+                .addRight("B")
+                .addLeft("A", "1")
+                .addRight("A", "2")
+                .apply();
+        List<String> have = tree.preOrderDepthStream().collect(Collectors.toList());
+        assertEquals(Arrays.asList("ROOT", "A", "1", "2", "B"), have, "Pre-order depth first must match");
+    }
+
+    @Test
+    void failedBatchChangesNothing() {
+        BinaryTree<String> tree = new BinaryTree<>("ROOT");
+        tree.addLeft("A");
+        assertThrows(IllegalArgumentException.class, () -> tree.batch().addRight("B").addLeft("C").apply());
+        assertThrows(IllegalArgumentException.class, () -> tree.batch().addRight("B").addLeft("B", "A").apply());
+        assertEquals(false, tree.contains("B"), "Must not contain B");
+    }
+
+    @Test
+    void occupiedSideRejected() {
+        BinaryTree<String> tree = new BinaryTree<>("ROOT");
+        tree.addLeft("A");
+        tree.addLeft("A", "1");
+        assertThrows(IllegalArgumentException.class, () -> tree.addLeft("B"));
+        assertThrows(IllegalArgumentException.class, () -> tree.addLeft("A", "2"));
+        assertEquals(Arrays.asList("ROOT", "A", "1"), tree.preOrderDepthStream().collect(Collectors.toList()), "Tree must not change");
+    }
+
+    @Test
+    void fold() {
+        String joined = symmetric.fold(leaf -> leaf, (data, children) -> data + children);
+        assertEquals("ROOT[A[1[a, b], 2[c, d]], B[3[e, f], 4[g, h]]]", joined, "Fold must keep child order");
+    }
+
+    @Test
+    void aggregate() {
+        Map<String, Integer> depths = symmetric.aggregate(leaf -> 1, (data, children) -> 1 + Collections.max(children));
+        assertEquals(15, depths.size(), "Must have a result for every node");
+        assertEquals(4, depths.get("ROOT"), "Depth of ROOT must match");
+        assertEquals(2, depths.get("3"), "Depth of 3 must match");
+    }
+
+    @Test
+    void walk() {
+        List<String> visited = new ArrayList<>();
+        symmetric.walk(new TreeVisitor<String>() {
+            @Override
+            public VisitResult preVisit(String data) {
+                visited.add(data);
+                if (data.equals("1")) {
+                    return VisitResult.SKIP_SUBTREE;
+                }
+                return data.equals("d") ? VisitResult.TERMINATE : VisitResult.CONTINUE;
+            }
+        });
+        assertEquals(Arrays.asList("ROOT", "A", "1", "2", "c", "d"), visited, "Walk must match");
+    }
+
+    @Test
+    void levels() {
+        assertEquals(Arrays.asList("1", "2", "3", "4"), symmetric.levelStream(2).collect(Collectors.toList()), "Level must match");
+        assertEquals(Arrays.asList(1, 2, 4, 8), symmetric.levelCounts(), "Level counts must match");
+        assertEquals(Arrays.asList("ROOT", "A", "1", "2", "B", "3", "4"), symmetric.preOrderDepthStream(3).collect(Collectors.toList()), "Pre-order depth first must match");
+    }
+
+    @Test
+    void identityEquivalence() {
+        String first = new String("same");
+        String second = new String("same");
+        BinaryTree<String> tree = new BinaryTree<>("ROOT", Equivalence.identity());
+        tree.addLeft(first);
+        tree.addRight(second);
+        tree.batch().addLeft(second, "child").apply();
+        assertEquals(Optional.of("child"), tree.getLeft(second), "Child must be added by identity");
+        assertEquals(Optional.empty(), tree.getLeft(first), "Equal data must not match");
+        assertEquals(false, tree.contains(new String("same")), "Equal data must not be found");
+    }
+
+    @Test
+    void changesPublishTreeData() {
+        BinaryTree<String> tree = new BinaryTree<>("ROOT", Equivalence.byKey(String::toLowerCase));
+        tree.addLeft("Parent");
+        List<TreeChange<String>> changes = new ArrayList<>();
+        tree.subscribe(new ChangeSubscriber<String>() {
+            @Override
+            public void onSubscribe(ChangeSubscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(List<TreeChange<String>> next) {
+                changes.addAll(next);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                throw new AssertionError(error);
+            }
+        });
+        tree.addLeft("PARENT", "left");
+        tree.addRight("parent", "right");
+        assertEquals(Arrays.asList(
+                new TreeChange<>(TreeChange.Type.ADDED, "left", "Parent", null),
+                new TreeChange<>(TreeChange.Type.ADDED, "right", "Parent", null)), changes, "Changes must name the parent in the tree");
+    }
+}
@@ -0,0 +1,154 @@
+package me.legrange.tree;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the public operations of the trees on chains a million levels deep, far deeper than the call stack allows
+ * for recursion.
+ */
+class DeepTreeTest {
+
+    private static final int DEPTH = 1_000_000;
+
+    private static GeneralTree<Integer> chain;
+
+    @BeforeAll
+    static void setup() {
+        chain = new GeneralTree<>(0);
+        GeneralTree<Integer>.Batch batch = chain.batch();
+        for (int node = 1; node < DEPTH; ++node) {
+            batch.add(node - 1, node);
+        }
+        batch.apply();
+    }
+
+    @Test
+    void generalTreeQueries() {
+        assertEquals(DEPTH, chain.getDepth(), "Depth must match");
+        assertEquals(1, chain.getWidth(), "Width must match");
+        assertTrue(chain.contains(DEPTH - 1), "Last node must be found");
+        assertFalse(chain.contains(DEPTH), "Missing data must not be found");
+        assertEquals(Optional.of(DEPTH - 2), chain.getParent(DEPTH - 1), "Parent must match");
+        assertEquals(Collections.singletonList(DEPTH - 1), chain.getChildren(DEPTH - 2), "Children must match");
+        assertEquals(DEPTH, chain.levelCounts().size(), "Level count must match");
+        assertEquals(DEPTH, chain.statistics().getNodeCount(), "Node count must match");
+        List<Integer> path = new ArrayList<>(DEPTH - 1);
+        for (int node = 1; node < DEPTH; ++node) {
+            path.add(node);
+        }
+        assertEquals(Optional.of(DEPTH - 1), chain.resolvePath(path), "Path must resolve");
+    }
+
+    @Test
+    void generalTreeTraversals() throws Exception {
+        assertEquals(DEPTH, chain.preOrderDepthStream().count(), "Pre-order size must match");
+        assertEquals(DEPTH - 1, chain.postOrderDepthStream().findFirst().get(), "Post-order must start at the leaf");
+        assertEquals(DEPTH, chain.breadthStream().count(), "Breadth first size must match");
+        assertEquals(DEPTH, chain.preOrderDepthStream(DEPTH).count(), "Depth-limited size must match");
+        assertEquals(DEPTH, (int) chain.<Integer>fold(leaf -> 1, (data, children) -> children.get(0) + 1), "Fold must match");
+        assertEquals(DEPTH, chain.<Integer>aggregate(leaf -> 1, (data, children) -> children.get(0) + 1).size(), "Aggregate size must match");
+        assertEquals(DEPTH, countVisits(chain), "Walk must visit every node");
+        Map<Integer, Integer> results = chain.<Integer>walkAsync(data -> CompletableFuture.completedFuture(data), 64).get();
+        assertEquals(DEPTH, results.size(), "Async walk must visit every node");
+    }
+
+    @Test
+    void generalTreeChanges() throws IOException {
+        StringWriter out = new StringWriter();
+        TreeJson.write(chain, out, String::valueOf);
+        GeneralTree<Integer> copy = TreeJson.readGeneralTree(new StringReader(out.toString()), Integer::valueOf);
+        assertTrue(chain.contentEquals(copy), "Copy must match");
+        copy.move(0, DEPTH - 1);
+        assertEquals(2, copy.getWidth(), "Moved leaf must hang off the root");
+        copy.remove(DEPTH / 2);
+        assertEquals(DEPTH / 2, copy.getDepth(), "Depth must match after removal");
+        assertEquals(2, chain.diff(copy).size(), "Differences must match");
+    }
+
+    @Test
+    void binaryTree() throws IOException {
+        BinaryTree<Integer> tree = new BinaryTree<>(0);
+        BinaryTree<Integer>.Batch batch = tree.batch();
+        for (int node = 1; node < DEPTH; ++node) {
+            batch.addLeft(node - 1, node);
+        }
+        batch.apply();
+        assertEquals(DEPTH, tree.getDepth(), "Depth must match");
+        assertEquals(1, tree.getWidth(), "Width must match");
+        assertTrue(tree.contains(DEPTH - 1), "Last node must be found");
+        assertEquals(Optional.of(DEPTH - 2), tree.getParent(DEPTH - 1), "Parent must match");
+        assertEquals(Optional.of(DEPTH - 1), tree.getLeft(DEPTH - 2), "Left child must match");
+        assertEquals(DEPTH - 1, tree.inOrderDepthStream().findFirst().get(), "In-order must start at the leaf");
+        assertEquals(DEPTH, tree.preOrderDepthStream().count(), "Pre-order size must match");
+        assertEquals(DEPTH - 1, tree.postOrderDepthStream().findFirst().get(), "Post-order must start at the leaf");
+        assertEquals(DEPTH, tree.breadthStream().count(), "Breadth first size must match");
+        assertEquals(DEPTH, (int) tree.<Integer>fold(leaf -> 1, (data, children) -> children.get(0) + 1), "Fold must match");
+        assertEquals(DEPTH, countVisits(tree), "Walk must visit every node");
+        StringWriter out = new StringWriter();
+        TreeJson.write(tree, out, String::valueOf);
+        BinaryTree<Integer> copy = TreeJson.readBinaryTree(new StringReader(out.toString()), Integer::valueOf);
+        assertEquals(DEPTH, copy.getDepth(), "Copy depth must match");
+    }
+
+    @Test
+    void binarySearchTree() throws IOException {
+        StringBuilder json = new StringBuilder();
+        for (int node = 0; node < DEPTH; ++node) {
+            json.append(node == 0 ? "" : ",\"right\":").append("{\"data\":").append(node);
+        }
+        for (int node = 0; node < DEPTH; ++node) {
+            json.append('}');
+        }
+        BinarySearchTree<Integer> tree = TreeJson.readBinarySearchTree(new StringReader(json.toString()), Integer::valueOf);
+        assertEquals(DEPTH, tree.getDepth(), "Depth must match");
+        assertEquals(DEPTH - 1, tree.find(DEPTH + 10), "Closest data must be found");
+        tree.add(DEPTH);
+        assertEquals(DEPTH, tree.find(DEPTH + 10), "Added data must be found");
+        assertEquals(0, tree.inOrderDepthStream().findFirst().get(), "In-order must start at the root");
+        assertEquals(DEPTH + 1, tree.postOrderDepthStream().count(), "Post-order size must match");
+    }
+
+    @Test
+    void binarySearchTreeMap() {
+        int size = 30_000;
+        BinarySearchTreeMap<Integer, Integer> map = new BinarySearchTreeMap<>();
+        for (int key = 0; key < size; ++key) {
+            map.put(key, key);
+        }
+        assertEquals(size - 1, map.get(size - 1), "Deepest value must be found");
+        assertEquals(size - 1, map.floorKey(size * 2), "Floor must match");
+        assertEquals(size, map.entryStream().count(), "Entry count must match");
+        for (int key = 0; key < size; key += 2) {
+            map.remove(key);
+        }
+        assertEquals(size / 2, map.size(), "Size must match after removal");
+    }
+
+    private static int countVisits(Tree<Integer> tree) {
+        AtomicInteger visits = new AtomicInteger();
+        tree.walk(new TreeVisitor<Integer>() {
+            @Override
+            public VisitResult preVisit(Integer data) {
+                visits.incrementAndGet();
+                return VisitResult.CONTINUE;
+            }
+        });
+        return visits.get();
+    }
+}
@@ -0,0 +1,38 @@
+package me.legrange.tree;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EquivalenceTest {
+
+    @Test
+    void equality() {
+        Equivalence<String> equality = Equivalence.equality();
+        assertTrue(equality.equivalent(new String("a"), "a"), "Equal data must be the same");
+        assertTrue(equality.equivalent(null, null), "Nulls must be the same");
+        assertEquals("a".hashCode(), equality.hash("a"), "Hash must match");
+        assertEquals("a", equality.wrap("a"), "Data must be its own key");
+    }
+
+    @Test
+    void identity() {
+        Equivalence<String> identity = Equivalence.identity();
+        String data = new String("a");
+        assertFalse(identity.equivalent(data, "a"), "Equal data must not be the same");
+        assertEquals(identity.wrap(data), identity.wrap(data), "Keys must match");
+        assertNotEquals(identity.wrap(data), identity.wrap("a"), "Keys must differ");
+    }
+
+    @Test
+    void custom() {
+        Equivalence<String> byLength = Equivalence.of((a, b) -> a.length() == b.length(), String::length);
+        assertTrue(byLength.equivalent("ab", "cd"), "Data of the same length must be the same");
+        assertEquals(byLength.wrap("ab"), byLength.wrap("cd"), "Keys must match");
+        assertTrue(Equivalence.<String>byKey(String::length).equivalent("ab", "cd"), "Data with equal keys must be the same");
+        assertFalse(Equivalence.<String>byKey(String::length).equivalent("ab", null), "Null must only match null");
+    }
+}
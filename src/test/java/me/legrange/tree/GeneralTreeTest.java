@@ -3,8 +3,21 @@ package me.legrange.tree;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -149,4 +162,575 @@ class GeneralTreeTest {
         assertEquals(5, depth, "Depth must match");
         setup();
     }
-}
\ No newline at end of file
+
+    @Test
+    void removeBranch() {
+        symmetric.remove("A");
+        assertEquals(false, symmetric.contains("A"), "Must not contain A");
+        assertEquals(false, symmetric.contains("1"), "Must not contain 1");
+        assertEquals(6, symmetric.getWidth(), "Width must match");
+        setup();
+    }
+
+    @Test
+    void moveBelowItself() {
+        assertThrows(IllegalArgumentException.class, () -> symmetric.move("1", "A"));
+        assertEquals("ROOT", symmetric.getParent("A").get(), "Parent for A is ROOT");
+    }
+
+    @Test
+    void addAll() {
+        GeneralTree<String> tree = new GeneralTree<>("ROOT");
+        tree.addAll("ROOT", Arrays.asList("A", "B", "C"));
+        assertEquals(Arrays.asList("A", "B", "C"), tree.getChildren("ROOT"), "Children must match");
+    }
+
+    @Test
+    void batch() {
+        GeneralTree<String> tree = new GeneralTree<>("ROOT");
+        tree.batch()
+                .add("A")
+                .add("B")
+                .addAll("A", Arrays.asList("1", "2", "3"))
+                .add("1", "a")
+                .move("B", "2")
+                .remove("3")
+                .apply();
+        List<String> have = tree.preOrderDepthStream().collect(Collectors.toList());
+        assertEquals(Arrays.asList("ROOT", "A", "1", "a", "B", "2"), have, "Pre-order depth first must match");
+    }
+
+    @Test
+    void failedBatchChangesNothing() {
+        GeneralTree<String> tree = new GeneralTree<>("ROOT");
+        tree.add("A");
+        tree.add("B");
+        tree.add("A", "1");
+        GeneralTree<String>.Batch batch = tree.batch()
+                .add("B", "2")
+                .move("B", "A")
+                .remove("1")
+                .add("1", "a");
+        assertThrows(NoSuchElementException.class, batch::apply);
+        List<String> have = tree.preOrderDepthStream().collect(Collectors.toList());
+        assertEquals(Arrays.asList("ROOT", "A", "1", "B"), have, "Tree must be unchanged");
+    }
+
+    @Test
+    void batchRejectsDuplicates() {
+        GeneralTree<String> tree = new GeneralTree<>("ROOT");
+        tree.add("A");
+        assertThrows(IllegalArgumentException.class, () -> tree.batch().add("B").add("A", "B").apply());
+        assertEquals(false, tree.contains("B"), "Must not contain B");
+    }
+
+    @Test
+    void childAccess() {
+        assertEquals(3, symmetric.childCount("A"), "Child count must match");
+        assertEquals(false, symmetric.isLeaf("A"), "A is not a leaf");
+        assertEquals(true, symmetric.isLeaf("1"), "1 is a leaf");
+        List<String> have = new ArrayList<>();
+        symmetric.forEachChild("B", have::add);
+        assertEquals(Arrays.asList("4", "5", "6"), have, "Children must match");
+    }
+
+    @Test
+    void childrenView() {
+        GeneralTree<String> tree = new GeneralTree<>("ROOT");
+        tree.add("A");
+        List<String> view = tree.childrenView("ROOT");
+        assertEquals(Arrays.asList("A"), view, "Children must match");
+        tree.add("B");
+        assertEquals(Arrays.asList("A", "B"), view, "View must be live");
+        assertThrows(UnsupportedOperationException.class, () -> view.add("C"));
+    }
+
+    @Test
+    void fold() {
+        int size = symmetric.fold(leaf -> 1, (data, children) -> 1 + children.stream().mapToInt(c -> c).sum());
+        assertEquals(13, size, "Size must match");
+        String joined = symmetric.fold(leaf -> leaf, (data, children) -> data + children);
+        assertEquals("ROOT[A[1, 2, 3], B[4, 5, 6], C[7, 8, 9]]", joined, "Fold must keep child order");
+    }
+
+    @Test
+    void aggregate() {
+        Map<String, Integer> sizes = asymmetric.aggregate(leaf -> 1, (data, children) -> 1 + children.stream().mapToInt(c -> c).sum());
+        assertEquals(12, sizes.size(), "Must have a result for every node");
+        assertEquals(12, sizes.get("ROOT"), "Size of ROOT must match");
+        assertEquals(6, sizes.get("A"), "Size of A must match");
+        assertEquals(1, sizes.get("!"), "Size of ! must match");
+    }
+
+    @Test
+    void foldLargeTree() {
+        GeneralTree<Integer> tree = new GeneralTree<>(0);
+        GeneralTree<Integer>.Batch batch = tree.batch();
+        for (int child = 1; child < 100_000; ++child) {
+            batch.add((child - 1) / 4, child);
+        }
+        batch.apply();
+        long sum = tree.fold(leaf -> (long) leaf, (data, children) -> data + children.stream().mapToLong(c -> c).sum());
+        assertEquals(99_999L * 100_000L / 2, sum, "Sum must match");
+    }
+
+    @Test
+    void resolvePath() {
+        GeneralTree<String> tree = new GeneralTree<>("/", path -> path.substring(path.lastIndexOf('/') + 1));
+        tree.add("/usr");
+        tree.add("/usr", "/usr/lib");
+        tree.add("/usr", "/usr/bin");
+        tree.add("/usr/bin", "/usr/bin/java");
+        assertEquals(Optional.of("/"), tree.resolvePath(Collections.emptyList()), "Empty path is the root");
+        assertEquals(Optional.of("/usr/bin/java"), tree.resolvePath(Arrays.asList("usr", "bin", "java")), "Path must resolve");
+        assertEquals(Optional.empty(), tree.resolvePath(Arrays.asList("usr", "sbin")), "Path must not resolve");
+    }
+
+    @Test
+    void resolvePathInWideNode() {
+        GeneralTree<Integer> tree = new GeneralTree<>(-1);
+        GeneralTree<Integer>.Batch batch = tree.batch();
+        for (int child = 0; child < 1000; ++child) {
+            batch.add(child);
+        }
+        batch.apply();
+        tree.add(500, 5000);
+        for (int child = 0; child < 1000; ++child) {
+            assertEquals(Optional.of(child), tree.resolvePath(Collections.singletonList(child)), "Path must resolve");
+        }
+        assertEquals(Optional.of(5000), tree.resolvePath(Arrays.asList(500, 5000)), "Path must resolve");
+        tree.remove(700);
+        tree.move(500, 800);
+        assertEquals(Optional.empty(), tree.resolvePath(Collections.singletonList(700)), "Removed path must not resolve");
+        assertEquals(Optional.empty(), tree.resolvePath(Collections.singletonList(800)), "Moved path must not resolve");
+        assertEquals(Optional.of(800), tree.resolvePath(Arrays.asList(500, 800)), "Moved path must resolve");
+    }
+
+    @Test
+    void contentHash() {
+        GeneralTree<String> tree = new GeneralTree<>("ROOT");
+        tree.add("A");
+        tree.add("B");
+        tree.add("A", "1");
+        GeneralTree<String> other = new GeneralTree<>("ROOT");
+        other.addAll("ROOT", Arrays.asList("A", "B"));
+        other.add("A", "1");
+        assertEquals(true, tree.contentEquals(other), "Trees must have the same content");
+        other.move("B", "1");
+        assertEquals(false, tree.contentEquals(other), "Trees must not have the same content");
+        other.move("A", "1");
+        assertEquals(true, tree.contentEquals(other), "Trees must have the same content");
+        tree.add("B", "2");
+        assertEquals(false, tree.contentEquals(other), "Adding to a leaf must change the content");
+        other.add("B", "2");
+        assertEquals(true, tree.contentEquals(other), "Trees must have the same content");
+        tree.remove("2");
+        other.remove("2");
+        assertEquals(true, tree.contentEquals(other), "Trees must have the same content");
+    }
+
+    @Test
+    void contentHashKnownWithoutLoading() {
+        AtomicInteger loads = new AtomicInteger();
+        GeneralTree<Integer> tree = new GeneralTree<>(0, parent -> {
+            loads.incrementAndGet();
+            return ternaryChildren(parent);
+        }, 20);
+        long hash = tree.contentHash();
+        loads.set(0);
+        assertEquals(hash, tree.contentHash(), "Hash must match");
+        assertEquals(0, loads.get(), "A known hash must not load children");
+    }
+
+    @Test
+    void diff() {
+        GeneralTree<String> other = new GeneralTree<>("ROOT");
+        other.batch()
+                .addAll("ROOT", Arrays.asList("A", "C", "B"))
+                .addAll("A", Arrays.asList("1", "2", "3"))
+                .addAll("B", Arrays.asList("4", "5", "6", "x"))
+                .addAll("C", Arrays.asList("7", "8"))
+                .apply();
+        List<Difference<String>> have = symmetric.diff(other);
+        assertEquals(3, have.size(), "Number of differences must match");
+        assertTrue(have.contains(new Difference<>(Difference.Type.ADDED, "x", "B")), "x must be added");
+        assertTrue(have.contains(new Difference<>(Difference.Type.REMOVED, "9", "C")), "9 must be removed");
+        assertTrue(have.contains(new Difference<>(Difference.Type.REORDERED, "ROOT", null)), "ROOT must be reordered");
+        assertEquals(0, symmetric.diff(symmetric).size(), "Tree must not differ from itself");
+    }
+
+    @Test
+    void changeFeed() {
+        GeneralTree<String> tree = new GeneralTree<>("ROOT");
+        List<List<TreeChange<String>>> batches = new ArrayList<>();
+        ChangeSubscription[] subscription = new ChangeSubscription[1];
+        tree.subscribe(new ChangeSubscriber<String>() {
+            @Override
+            public void onSubscribe(ChangeSubscription s) {
+                subscription[0] = s;
+            }
+
+            @Override
+            public void onNext(List<TreeChange<String>> changes) {
+                batches.add(changes);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                fail(error);
+            }
+        });
+        tree.add("A");
+        tree.add("A", "1");
+        assertEquals(0, batches.size(), "Nothing must be delivered without demand");
+        subscription[0].request(1);
+        assertEquals(Arrays.asList(Arrays.asList(new TreeChange<>(TreeChange.Type.ADDED, "A", "ROOT", null))), batches, "One change must be delivered");
+        subscription[0].request(Long.MAX_VALUE);
+        tree.batch().add("B").move("B", "1").remove("A").apply();
+        assertEquals(3, batches.size(), "Batch must be delivered together");
+        assertEquals(Arrays.asList(
+                new TreeChange<>(TreeChange.Type.ADDED, "B", "ROOT", null),
+                new TreeChange<>(TreeChange.Type.MOVED, "1", "B", "A"),
+                new TreeChange<>(TreeChange.Type.REMOVED, "A", null, "ROOT")), batches.get(2), "Batch must match");
+        subscription[0].cancel();
+        tree.add("C");
+        assertEquals(3, batches.size(), "Nothing must be delivered after cancel");
+    }
+
+    @Test
+    void changeFeedOverflow() {
+        GeneralTree<String> tree = new GeneralTree<>("ROOT");
+        List<Throwable> errors = new ArrayList<>();
+        tree.subscribe(new ChangeSubscriber<String>() {
+            @Override
+            public void onSubscribe(ChangeSubscription subscription) {
+            }
+
+            @Override
+            public void onNext(List<TreeChange<String>> changes) {
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                errors.add(error);
+            }
+        }, 2);
+        tree.add("A");
+        tree.add("B");
+        assertEquals(0, errors.size(), "Buffer must not overflow");
+        tree.add("C");
+        assertEquals(1, errors.size(), "Buffer must overflow");
+    }
+
+    @Test
+    void changeFeedLargeBatch() {
+        GeneralTree<Integer> tree = new GeneralTree<>(0);
+        int size = ChangePublisher.DEFAULT_MAX_BUFFERED + 5000;
+        List<Integer> batchSizes = new ArrayList<>();
+        tree.subscribe(new ChangeSubscriber<Integer>() {
+            @Override
+            public void onSubscribe(ChangeSubscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(List<TreeChange<Integer>> changes) {
+                batchSizes.add(changes.size());
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                fail(error);
+            }
+        });
+        GeneralTree<Integer>.Batch batch = tree.batch();
+        for (int node = 1; node <= size; ++node) {
+            batch.add(node);
+        }
+        batch.apply();
+        assertEquals(size, batchSizes.stream().mapToInt(Integer::intValue).sum(), "Every change must be delivered");
+        assertTrue(batchSizes.stream().allMatch(count -> count <= ChangePublisher.FLUSH_CHUNK), "Changes must be delivered in chunks");
+    }
+
+    @Test
+    void changeFeedLimitBeyondDemand() {
+        GeneralTree<String> tree = new GeneralTree<>("ROOT");
+        List<TreeChange<String>> received = new ArrayList<>();
+        tree.subscribe(new ChangeSubscriber<String>() {
+            @Override
+            public void onSubscribe(ChangeSubscription subscription) {
+                subscription.request(3);
+            }
+
+            @Override
+            public void onNext(List<TreeChange<String>> changes) {
+                received.addAll(changes);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                fail(error);
+            }
+        }, 2);
+        tree.batch().add("A").add("B").add("C").add("D").add("E").apply();
+        assertEquals(3, received.size(), "Demanded changes must be delivered");
+    }
+
+    @Test
+    void walk() {
+        List<String> visited = new ArrayList<>();
+        symmetric.walk(new TreeVisitor<String>() {
+            @Override
+            public VisitResult preVisit(String data) {
+                visited.add(data);
+                if (data.equals("B")) {
+                    return VisitResult.SKIP_SUBTREE;
+                }
+                return data.equals("8") ? VisitResult.TERMINATE : VisitResult.CONTINUE;
+            }
+
+            @Override
+            public VisitResult postVisit(String data) {
+                visited.add("/" + data);
+                return VisitResult.CONTINUE;
+            }
+        });
+        assertEquals(Arrays.asList("ROOT", "A", "1", "/1", "2", "/2", "3", "/3", "/A", "B", "C", "7", "/7", "8"), visited, "Walk must match");
+    }
+
+    @Test
+    void walkSkipsLoading() {
+        AtomicInteger loads = new AtomicInteger();
+        GeneralTree<Integer> tree = new GeneralTree<>(0, parent -> {
+            loads.incrementAndGet();
+            return ternaryChildren(parent);
+        }, 1000);
+        tree.walk(new TreeVisitor<Integer>() {
+            @Override
+            public VisitResult preVisit(Integer data) {
+                return data == 0 || data == 1 ? VisitResult.CONTINUE : VisitResult.SKIP_SUBTREE;
+            }
+        });
+        assertEquals(2, loads.get(), "Only the children of visited nodes must be loaded");
+    }
+
+    @Test
+    void levels() {
+        assertEquals(Arrays.asList("1", "2", "3", "4", "5", "6"), asymmetric.levelStream(2).collect(Collectors.toList()), "Level must match");
+        assertEquals(Arrays.asList("!"), asymmetric.levelStream(4).collect(Collectors.toList()), "Level must match");
+        assertEquals(0, asymmetric.levelStream(5).count(), "Level must be empty");
+        assertEquals(Arrays.asList(1, 3, 6, 1, 1), asymmetric.levelCounts(), "Level counts must match");
+    }
+
+    @Test
+    void depthLimitedStreams() {
+        assertEquals(Arrays.asList("ROOT", "A", "B", "C"), symmetric.breadthStream(2).collect(Collectors.toList()), "Breadth first must match");
+        assertEquals(Arrays.asList("ROOT", "A", "1", "2", "3", "B", "4", "5", "C", "6"), asymmetric.preOrderDepthStream(3).collect(Collectors.toList()), "Pre-order depth first must match");
+        assertEquals(Arrays.asList(new Leveled<>("ROOT", 0), new Leveled<>("A", 1), new Leveled<>("B", 1), new Leveled<>("C", 1)),
+                symmetric.leveledBreadthStream(2).collect(Collectors.toList()), "Leveled breadth first must match");
+        assertEquals(0, symmetric.breadthStream(0).count(), "Stream must be empty");
+    }
+
+    @Test
+    void depthLimitedStreamsSkipLoading() {
+        AtomicInteger loads = new AtomicInteger();
+        GeneralTree<Integer> tree = new GeneralTree<>(0, parent -> {
+            loads.incrementAndGet();
+            return ternaryChildren(parent);
+        }, 1000);
+        assertEquals(Arrays.asList(4, 5, 6, 7, 8, 9, 10, 11, 12), tree.levelStream(2).collect(Collectors.toList()), "Level must match");
+        assertEquals(4, loads.get(), "Only levels above the requested one must be loaded");
+    }
+
+    @Test
+    void loadedOnDemand() {
+        AtomicInteger loads = new AtomicInteger();
+        GeneralTree<Integer> tree = new GeneralTree<>(0, parent -> {
+            loads.incrementAndGet();
+            return ternaryChildren(parent);
+        }, 1000);
+        assertEquals(Arrays.asList(1, 2, 3), tree.getChildren(0), "Children must match");
+        assertEquals(Arrays.asList(1, 2, 3), tree.getChildren(0), "Children must match");
+        assertEquals(1, loads.get(), "Children must be loaded once");
+        assertEquals(121, tree.preOrderDepthStream().count(), "Size must match");
+        assertThrows(UnsupportedOperationException.class, () -> tree.add(0, 500));
+    }
+
+    @Test
+    void loadedOnDemandWithinBudget() {
+        GeneralTree<Integer> eager = new GeneralTree<>(0);
+        GeneralTree<Integer>.Batch batch = eager.batch();
+        for (int parent = 0; parent < 40; ++parent) {
+            batch.addAll(parent, ternaryChildren(parent));
+        }
+        batch.apply();
+        GeneralTree<Integer> lazy = new GeneralTree<>(0, GeneralTreeTest::ternaryChildren, 20);
+        assertEquals(eager.preOrderDepthStream().collect(Collectors.toList()),
+                lazy.preOrderDepthStream().collect(Collectors.toList()), "Pre-order depth first must match");
+        assertEquals(eager.breadthStream().collect(Collectors.toList()),
+                lazy.breadthStream().collect(Collectors.toList()), "Breadth first must match");
+        assertEquals(eager.getDepth(), lazy.getDepth(), "Depth must match");
+        assertEquals(Arrays.asList(31, 32, 33), lazy.getChildren(10), "Children must match");
+    }
+
+    @Test
+    void statistics() {
+        TreeStatistics statistics = symmetric.statistics();
+        assertEquals(13, statistics.getNodeCount(), "Node count must match");
+        assertEquals(9, statistics.getLeafCount(), "Leaf count must match");
+        assertEquals(3, statistics.getMaxFanOut(), "Maximum fan-out must match");
+        assertEquals(9L, statistics.getFanOutDistribution().get(0), "Leaves must be counted");
+        assertEquals(4L, statistics.getFanOutDistribution().get(3), "Parents must be counted");
+        assertEquals(600, statistics.getEstimatedBytes(), "Estimated bytes must match");
+        assertEquals(24, new GeneralTree<>(0).statistics().getEstimatedBytes(), "A leaf must not hold child storage");
+    }
+
+    @Test
+    void wideNodeChanges() {
+        GeneralTree<Integer> tree = new GeneralTree<>(0);
+        List<Integer> expected = new ArrayList<>();
+        for (int child = 1; child <= 100; ++child) {
+            tree.add(child);
+            expected.add(child);
+        }
+        for (int child = 10; child <= 90; child += 10) {
+            tree.remove(child);
+            expected.remove(Integer.valueOf(child));
+        }
+        tree.move(0, 5);
+        expected.remove(Integer.valueOf(5));
+        expected.add(5);
+        assertEquals(expected, tree.getChildren(0), "Children must match");
+        assertEquals(Optional.of(55), tree.resolvePath(Collections.singletonList(55)), "Child must be found by key");
+        assertEquals(Optional.empty(), tree.resolvePath(Collections.singletonList(50)), "Removed child must not be found");
+        assertEquals(92, tree.statistics().getNodeCount(), "Node count must match");
+    }
+
+    @Test
+    void walkAsync() throws Exception {
+        Map<String, Integer> lengths = symmetric.walkAsync(data -> CompletableFuture.completedFuture(data.length()), 1).get();
+        assertEquals(13, lengths.size(), "Every node must have a result");
+        assertEquals(4, lengths.get("ROOT"), "Result must match");
+        assertEquals(1, lengths.get("7"), "Result must match");
+    }
+
+    @Test
+    void walkAsyncLimitsCallsInFlight() throws Exception {
+        ExecutorService backend = Executors.newFixedThreadPool(8);
+        try {
+            AtomicInteger inFlight = new AtomicInteger();
+            AtomicInteger maxInFlight = new AtomicInteger();
+            Set<String> completed = ConcurrentHashMap.newKeySet();
+            List<String> startedEarly = Collections.synchronizedList(new ArrayList<>());
+            Map<String, String> results = symmetric.<String>walkAsync(data -> {
+                Optional<String> parent = symmetric.getParent(data);
+                if (parent.isPresent() && !completed.contains(parent.get())) {
+                    startedEarly.add(data);
+                }
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                return CompletableFuture.supplyAsync(() -> {
+                    sleep(5);
+                    inFlight.decrementAndGet();
+                    completed.add(data);
+                    return data.toLowerCase();
+                }, backend);
+            }, 3).get(10, TimeUnit.SECONDS);
+            assertEquals(13, results.size(), "Every node must have a result");
+            assertTrue(maxInFlight.get() <= 3, "Calls in flight must be limited");
+            assertEquals(Collections.emptyList(), startedEarly, "Children must start after their parent completed");
+        } finally {
+            backend.shutdown();
+        }
+    }
+
+    @Test
+    void walkAsyncStopsOnFailure() {
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<Map<String, Integer>> walk = symmetric.walkAsync(data -> {
+            calls.incrementAndGet();
+            CompletableFuture<Integer> future = new CompletableFuture<>();
+            if (data.equals("B")) {
+                future.completeExceptionally(new IllegalStateException("Backend failed"));
+            } else {
+                future.complete(data.length());
+            }
+            return future;
+        }, 1);
+        ExecutionException ex = assertThrows(ExecutionException.class, walk::get);
+        assertTrue(ex.getCause() instanceof IllegalStateException, "Failure must be reported");
+        assertEquals(3, calls.get(), "No calls must be started after the failure");
+        assertThrows(IllegalArgumentException.class, () -> symmetric.walkAsync(data -> CompletableFuture.completedFuture(data), 0));
+    }
+
+    @Test
+    void walkAsyncWithoutWaitingForParents() throws Exception {
+        GeneralTree<Integer> tree = new GeneralTree<>(0);
+        GeneralTree<Integer>.Batch batch = tree.batch();
+        for (int node = 1; node < 10_000; ++node) {
+            batch.add(node - 1, node);
+        }
+        batch.apply();
+        Map<Integer, Integer> results = tree.<Integer>walkAsync(data -> CompletableFuture.completedFuture(data % 1000),
+                16, false, Runnable::run).get();
+        assertEquals(10_000, results.size(), "Every node must have a result");
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    void identityEquivalence() {
+        String first = new String("same");
+        String second = new String("same");
+        GeneralTree<String> tree = new GeneralTree<>("ROOT", Equivalence.identity());
+        tree.add(first);
+        tree.add(second);
+        tree.add(second, "child");
+        assertTrue(tree.contains(second), "Data must be found by identity");
+        assertFalse(tree.contains(new String("same")), "Equal data must not be found");
+        assertEquals(Collections.emptyList(), tree.getChildren(first), "First must have no children");
+        assertEquals(Collections.singletonList("child"), tree.getChildren(second), "Second must have the child");
+        tree.batch().add(first, "other").remove(second).apply();
+        assertEquals(Arrays.asList("ROOT", "same", "other"), tree.preOrderDepthStream().collect(Collectors.toList()), "Batch must use identity");
+    }
+
+    @Test
+    void keyEquivalence() {
+        GeneralTree<String> tree = new GeneralTree<>("ROOT", Equivalence.byKey(String::toLowerCase));
+        tree.add("Apple");
+        tree.add("apple", "Seed");
+        assertEquals(Optional.of("Apple"), tree.getParent("SEED"), "Parent must be found by key");
+        assertThrows(IllegalArgumentException.class, () -> tree.batch().add("APPLE").apply());
+        GeneralTree<String> other = new GeneralTree<>("root", Equivalence.byKey(String::toLowerCase));
+        other.add("APPLE");
+        other.add("APPLE", "seed");
+        assertTrue(tree.contentEquals(other), "Content hashes must use the equivalence");
+        assertEquals(Collections.emptyList(), tree.diff(other), "Diff must use the equivalence");
+    }
+
+    @Test
+    void wideNodeKeyEquivalence() {
+        Equivalence<String> ignoreCase = Equivalence.byKey(String::toLowerCase);
+        GeneralTree<String> tree = new GeneralTree<>("ROOT", ignoreCase);
+        for (int child = 0; child < 40; ++child) {
+            tree.add("C" + child);
+        }
+        assertEquals(Optional.of("C5"), tree.resolvePath(Collections.singletonList("c5")), "Path must use the equivalence");
+        tree.remove("c5");
+        assertEquals(Optional.empty(), tree.resolvePath(Collections.singletonList("C5")), "Removed child must not be found");
+        assertEquals(39, tree.childCount("root"), "Child count must match");
+        GeneralTree<String> lazy = new GeneralTree<>("ROOT", ignoreCase,
+                parent -> parent.equals("ROOT") ? Arrays.asList("A", "B") : Collections.emptyList(), 10);
+        assertEquals(Optional.of("B"), lazy.resolvePath(Collections.singletonList("b")), "Lazy tree must use the equivalence");
+        assertTrue(lazy.contains("a"), "Lazy tree must use the equivalence");
+    }
+
+    private static List<Integer> ternaryChildren(Integer parent) {
+        return parent < 40 ? Arrays.asList(parent * 3 + 1, parent * 3 + 2, parent * 3 + 3) : Collections.emptyList();
+    }
+}
@@ -0,0 +1,180 @@
+package me.legrange.tree;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TreeJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void recoverFromJournal() throws IOException {
+        GeneralTree<String> tree = makeTree();
+        try (TreeJournal<String> journal = open(tree, 1000)) {
+            tree.add("B", "5");
+            tree.move("A", "4");
+            tree.remove("1");
+            tree.batch().add("C").add("C", "6").apply();
+        }
+        assertEquals(preOrder(tree), preOrder(recover()), "Recovered tree must match");
+    }
+
+    @Test
+    void recoverAfterCompaction() throws IOException {
+        GeneralTree<String> tree = makeTree();
+        try (TreeJournal<String> journal = open(tree, 3)) {
+            for (int i = 0; i < 10; ++i) {
+                tree.add("B", "b" + i);
+            }
+            tree.move("B", "A");
+        }
+        assertEquals(preOrder(tree), preOrder(recover()), "Recovered tree must match");
+    }
+
+    @Test
+    void recoverWithTornTail() throws IOException {
+        GeneralTree<String> tree = makeTree();
+        try (TreeJournal<String> journal = open(tree, 1000)) {
+            tree.add("B", "5");
+        }
+        Files.write(directory.resolve("tree.journal"), new byte[]{0, 0, 0, 20, 1, 2}, StandardOpenOption.APPEND);
+        assertEquals(preOrder(tree), preOrder(recover()), "Recovered tree must match");
+    }
+
+    @Test
+    void reopenRecoveredTree() throws IOException {
+        GeneralTree<String> tree = makeTree();
+        try (TreeJournal<String> journal = open(tree, 1000)) {
+            tree.add("B", "5");
+        }
+        GeneralTree<String> recovered = recover();
+        try (TreeJournal<String> journal = open(recovered, 1000)) {
+            recovered.add("5", "6");
+        }
+        assertEquals("5", recover().getParent("6").get(), "Recovered tree must include new changes");
+    }
+
+    @Test
+    void recoverLargeBatch() throws IOException {
+        GeneralTree<String> tree = makeTree();
+        GeneralTree<String>.Batch batch = tree.batch();
+        for (int i = 0; i < ChangePublisher.DEFAULT_MAX_BUFFERED + 5000; ++i) {
+            batch.add("A", "a" + i);
+        }
+        try (TreeJournal<String> journal = open(tree, 1_000_000)) {
+            batch.apply();
+        }
+        assertEquals(preOrder(tree), preOrder(recover()), "Recovered tree must match");
+    }
+
+    @Test
+    void recoverDuplicateData() throws IOException {
+        GeneralTree<String> tree = makeTree();
+        try (TreeJournal<String> journal = open(tree, 1000)) {
+            tree.add("B", "1");
+            tree.add("1", "5");
+            tree.move("B", "2");
+            tree.remove("1");
+            tree.add("A", "3");
+            tree.add("3", "6");
+            tree.remove("4");
+            tree.add("2", "4");
+        }
+        assertEquals(preOrder(tree), preOrder(recover()), "Recovered tree must match");
+    }
+
+    @Test
+    void recoverWithEquivalence() throws IOException {
+        Equivalence<String> ignoreCase = Equivalence.byKey(String::toLowerCase);
+        GeneralTree<String> tree = new GeneralTree<>("ROOT", ignoreCase);
+        tree.add("A");
+        try (TreeJournal<String> journal = open(tree, 1000)) {
+            tree.add("a", "B");
+            tree.move("root", "b");
+        }
+        GeneralTree<String> recovered = TreeJournal.recover(directory, bytes -> new String(bytes, StandardCharsets.UTF_8), ignoreCase);
+        assertEquals(preOrder(tree), preOrder(recovered), "Recovered tree must match");
+        assertTrue(recovered.contains("b"), "Recovered tree must use the equivalence");
+    }
+
+    @Test
+    void failedWriteFailsChange() throws IOException {
+        GeneralTree<String> tree = makeTree();
+        TreeJournal<String> journal = TreeJournal.open(tree, directory, data -> {
+            if (data.equals("bad")) {
+                throw new IllegalStateException("Cannot encode");
+            }
+            return data.getBytes(StandardCharsets.UTF_8);
+        }, 2, 1000);
+        assertThrows(IllegalStateException.class, () -> tree.add("A", "bad"));
+        assertFalse(tree.contains("bad"), "Failed change must be undone");
+        assertThrows(UncheckedIOException.class, () -> tree.add("A", "good"));
+        assertFalse(tree.contains("good"), "Changes must fail once the journal has stopped");
+        assertThrows(IOException.class, journal::close);
+        tree.add("A", "good");
+        assertEquals(preOrder(makeTree()), preOrder(recover()), "Recovered tree must not include failed changes");
+    }
+
+    @Test
+    void failedLargeBatchLeavesNoRecords() throws IOException {
+        GeneralTree<String> tree = makeTree();
+        TreeJournal<String> journal = TreeJournal.open(tree, directory, data -> {
+            if (data.equals("bad")) {
+                throw new IllegalStateException("Cannot encode");
+            }
+            return data.getBytes(StandardCharsets.UTF_8);
+        }, 2, 1_000_000);
+        GeneralTree<String>.Batch batch = tree.batch();
+        for (int i = 0; i < 10_000; ++i) {
+            batch.add("A", "a" + i);
+        }
+        batch.add("B", "bad");
+        assertThrows(IllegalStateException.class, batch::apply);
+        assertThrows(IOException.class, journal::close);
+        assertEquals(preOrder(makeTree()), preOrder(recover()), "Recovered tree must not include failed changes");
+    }
+
+    @Test
+    void recoverWithoutSnapshot() {
+        assertThrows(IOException.class, this::recover);
+    }
+
+    private TreeJournal<String> open(GeneralTree<String> tree, int compactInterval) throws IOException {
+        return TreeJournal.open(tree, directory, data -> data.getBytes(StandardCharsets.UTF_8), 2, compactInterval);
+    }
+
+    private GeneralTree<String> recover() throws IOException {
+        return TreeJournal.recover(directory, bytes -> new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    private static GeneralTree<String> makeTree() {
+        GeneralTree<String> tree = new GeneralTree<>("ROOT");
+        tree.add("A");
+        tree.add("B");
+        tree.add("A", "1");
+        tree.add("A", "2");
+        tree.add("B", "3");
+        tree.add("B", "4");
+        return tree;
+    }
+
+    private static List<String> preOrder(GeneralTree<String> tree) {
+        return tree.preOrderDepthStream().collect(Collectors.toList());
+    }
+
+}
@@ -0,0 +1,112 @@
+package me.legrange.tree;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TreeJsonTest {
+
+    @Test
+    void writeGeneralTree() throws IOException {
+        GeneralTree<String> tree = new GeneralTree<>("ROOT");
+        tree.add("A");
+        tree.add("B");
+        tree.add("A", "1");
+        tree.add("A", "2");
+        StringWriter out = new StringWriter();
+        TreeJson.write(tree, out, TreeJson::quote);
+        assertEquals("{\"data\":\"ROOT\",\"children\":[{\"data\":\"A\",\"children\":[{\"data\":\"1\"},{\"data\":\"2\"}]},{\"data\":\"B\"}]}",
+                out.toString(), "JSON must match");
+        GeneralTree<String> copy = TreeJson.readGeneralTree(new StringReader(out.toString()), TreeJson::unquote);
+        assertTrue(tree.contentEquals(copy), "Tree must survive a round trip");
+    }
+
+    @Test
+    void readGeneralTree() throws IOException {
+        String json = " { \"data\" : {\"id\": 1, \"tags\": [\"x\", \"}\"]},\n \"children\" : [ { \"data\": 2, \"children\": [] }, {\"data\":-3.5e2} ] } ";
+        GeneralTree<String> tree = TreeJson.readGeneralTree(new StringReader(json), data -> data);
+        assertEquals(Arrays.asList("{\"id\": 1, \"tags\": [\"x\", \"}\"]}", "2", "-3.5e2"),
+                tree.preOrderDepthStream().collect(Collectors.toList()), "Payloads must be passed on as JSON text");
+    }
+
+    @Test
+    void readWithEquivalence() throws IOException {
+        String json = "{\"data\":\"Root\",\"children\":[{\"data\":\"Leaf\"}]}";
+        GeneralTree<String> tree = TreeJson.readGeneralTree(new StringReader(json), TreeJson::unquote,
+                Equivalence.byKey(String::toLowerCase));
+        assertTrue(tree.contains("LEAF"), "Data must be found with the equivalence");
+        BinaryTree<String> binary = TreeJson.readBinaryTree(new StringReader(json.replace("\"children\":[", "\"left\":").replace("]", "")),
+                TreeJson::unquote, Equivalence.byKey(String::toLowerCase));
+        assertEquals(Optional.of("Leaf"), binary.getLeft("ROOT"), "Data must be found with the equivalence");
+    }
+
+    @Test
+    void binaryTreeRoundTrip() throws IOException {
+        BinaryTree<Integer> tree = new BinaryTree<>(1);
+        tree.addLeft(2);
+        tree.addRight(3);
+        tree.addRight(2, 4);
+        tree.addLeft(3, 5);
+        StringWriter out = new StringWriter();
+        TreeJson.write(tree, out, String::valueOf);
+        assertEquals("{\"data\":1,\"left\":{\"data\":2,\"right\":{\"data\":4}},\"right\":{\"data\":3,\"left\":{\"data\":5}}}",
+                out.toString(), "JSON must match");
+        BinaryTree<Integer> copy = TreeJson.readBinaryTree(new StringReader(out.toString()), Integer::valueOf);
+        assertEquals(tree.preOrderDepthStream().collect(Collectors.toList()), copy.preOrderDepthStream().collect(Collectors.toList()), "Pre-order must match");
+        assertEquals(tree.inOrderDepthStream().collect(Collectors.toList()), copy.inOrderDepthStream().collect(Collectors.toList()), "In-order must match");
+        BinaryTree<Integer> withNulls = TreeJson.readBinaryTree(new StringReader("{\"data\":1,\"left\":null,\"right\":{\"data\":2}}"), Integer::valueOf);
+        assertEquals(Arrays.asList(1, 2), withNulls.inOrderDepthStream().collect(Collectors.toList()), "Null children must be skipped");
+    }
+
+    @Test
+    void binarySearchTreeRoundTrip() throws IOException {
+        BinarySearchTree<Integer> tree = new BinarySearchTree<>(50);
+        tree.addAll(Arrays.asList(30, 70, 20, 40, 60, 80, 45));
+        StringWriter out = new StringWriter();
+        TreeJson.write(tree, out, String::valueOf);
+        BinarySearchTree<Integer> copy = TreeJson.readBinarySearchTree(new StringReader(out.toString()), Integer::valueOf);
+        assertEquals(tree.inOrderDepthStream().collect(Collectors.toList()), copy.inOrderDepthStream().collect(Collectors.toList()), "In-order must match");
+        assertEquals(45, copy.find(44), "Copy must be searchable");
+        assertThrows(IOException.class, () -> TreeJson.readBinarySearchTree(
+                new StringReader("{\"data\":50,\"left\":{\"data\":30,\"right\":{\"data\":55}}}"), Integer::valueOf));
+        assertThrows(IOException.class, () -> TreeJson.readBinarySearchTree(
+                new StringReader("{\"data\":50,\"right\":{\"data\":50}}"), Integer::valueOf));
+    }
+
+    @Test
+    void malformedInput() {
+        String[] malformed = {
+                "",
+                "{\"children\":[],\"data\":1}",
+                "{\"data\":1,\"children\":[{\"data\":2}]",
+                "{\"data\":1} {}",
+                "{\"data\":1,\"children\":[{\"data\":2},]}",
+                "{\"data\":\"open}",
+                "{\"data\":1,\"other\":2}",
+        };
+        for (String json : malformed) {
+            assertThrows(IOException.class, () -> TreeJson.readGeneralTree(new StringReader(json), data -> data), json);
+        }
+        assertThrows(IOException.class, () -> TreeJson.readBinaryTree(
+                new StringReader("{\"data\":1,\"left\":{\"data\":2},\"left\":{\"data\":3}}"), data -> data));
+    }
+
+    @Test
+    void quoting() {
+        String text = "a \"quoted\" \\ path\n\twith \u0001 control";
+        assertEquals("\"a \\\"quoted\\\" \\\\ path\\n\\twith \\u0001 control\"", TreeJson.quote(text), "Quoted text must match");
+        assertEquals(text, TreeJson.unquote(TreeJson.quote(text)), "Text must survive a round trip");
+        assertEquals("é/", TreeJson.unquote("\"\\u00e9\\/\""), "Escapes must be decoded");
+        assertThrows(IllegalArgumentException.class, () -> TreeJson.unquote("plain"));
+        assertThrows(IllegalArgumentException.class, () -> TreeJson.unquote("\"bad \\x escape\""));
+    }
+}
@@ -0,0 +1,128 @@
+package me.legrange.tree;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TreeTest {
+
+    @Test
+    void defaultWalk() {
+        GeneralTree<String> tree = makeTree();
+        List<String> visited = new ArrayList<>();
+        TreeVisitor<String> visitor = new TreeVisitor<String>() {
+            @Override
+            public VisitResult preVisit(String data) {
+                visited.add(data);
+                if (data.equals("8")) {
+                    return VisitResult.TERMINATE;
+                }
+                return data.equals("B") ? VisitResult.SKIP_SUBTREE : VisitResult.CONTINUE;
+            }
+
+            @Override
+            public VisitResult postVisit(String data) {
+                visited.add("/" + data);
+                return VisitResult.CONTINUE;
+            }
+        };
+        tree.walk(visitor);
+        List<String> expected = new ArrayList<>(visited);
+        visited.clear();
+        new MinimalTree<>(tree).walk(visitor);
+        assertEquals(expected, visited, "Walk must match");
+    }
+
+    @Test
+    void defaultFold() {
+        GeneralTree<String> tree = makeTree();
+        assertEquals(tree.fold(data -> 1, (data, counts) -> 1 + counts.stream().mapToInt(Integer::intValue).sum()),
+                new MinimalTree<>(tree).<Integer>fold(data -> 1, (data, counts) -> 1 + counts.stream().mapToInt(Integer::intValue).sum()),
+                "Fold must match");
+    }
+
+    @Test
+    void defaultLevels() {
+        GeneralTree<String> tree = makeTree();
+        Tree<String> minimal = new MinimalTree<>(tree);
+        assertEquals(tree.preOrderDepthStream(3).collect(Collectors.toList()),
+                minimal.preOrderDepthStream(3).collect(Collectors.toList()), "Pre-order depth first must match");
+        assertEquals(tree.leveledBreadthStream(3).collect(Collectors.toList()),
+                minimal.leveledBreadthStream(3).collect(Collectors.toList()), "Leveled breadth first must match");
+        assertEquals(tree.breadthStream(Integer.MAX_VALUE).collect(Collectors.toList()),
+                minimal.breadthStream(Integer.MAX_VALUE).collect(Collectors.toList()), "Breadth first must match");
+        assertEquals(Arrays.asList("x", "y"), minimal.levelStream(3).collect(Collectors.toList()), "Level must match");
+        assertEquals(Arrays.asList(1, 3, 8, 2), minimal.levelCounts(), "Level counts must match");
+        assertEquals(0, minimal.breadthStream(0).count(), "Stream must be empty");
+    }
+
+    private static GeneralTree<String> makeTree() {
+        GeneralTree<String> tree = new GeneralTree<>("ROOT");
+        tree.batch()
+                .addAll("ROOT", Arrays.asList("A", "B", "C"))
+                .addAll("A", Arrays.asList("1", "2", "3"))
+                .addAll("B", Arrays.asList("4", "5"))
+                .addAll("C", Arrays.asList("6", "7", "8"))
+                .addAll("6", Arrays.asList("x", "y"))
+                .apply();
+        return tree;
+    }
+
+    /** A tree that only implements the abstract methods of the interface */
+    private static final class MinimalTree<T> implements Tree<T> {
+
+        private final Tree<T> tree;
+
+        private MinimalTree(Tree<T> tree) {
+            this.tree = tree;
+        }
+
+        @Override
+        public boolean contains(T object) {
+            return tree.contains(object);
+        }
+
+        @Override
+        public Stream<T> preOrderDepthStream() {
+            return tree.preOrderDepthStream();
+        }
+
+        @Override
+        public Stream<T> postOrderDepthStream() {
+            return tree.postOrderDepthStream();
+        }
+
+        @Override
+        public Stream<T> breadthStream() {
+            return tree.breadthStream();
+        }
+
+        @Override
+        public T getRoot() {
+            return tree.getRoot();
+        }
+
+        @Override
+        public int getDepth() {
+            return tree.getDepth();
+        }
+
+        @Override
+        public int getWidth() {
+            return tree.getWidth();
+        }
+
+        @Override
+        public Optional<T> getParent(T child) {
+            return tree.getParent(child);
+        }
+    }
+
+}